@@ -0,0 +1,145 @@
+import benchmarks.Workload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+// Table of the benchmarks: an integer key, an indexed and an unindexed integer column with 100 distinct
+// values each, and a string column
+public class DBAppWorkload implements Workload {
+  private static final int distinctValues = 100;
+  private static int tableCount;
+  private final DBApp app;
+  private final Random random;
+  private final List<String> tableNames = new ArrayList<>();
+  private String tableName;
+  private int rows;
+
+  public DBAppWorkload(long seed) throws DBAppException {
+    app = new DBApp();
+    random = new Random(seed);
+  }
+
+  // Called through Workload.configure, the configuration is read once by the first table
+  public static void configure(int pageSize, int bitmapSize) {
+    MetaData.overrideProperty("MaximumRowsCountinPage", String.valueOf(pageSize));
+    MetaData.overrideProperty("BitmapSize", String.valueOf(bitmapSize));
+  }
+
+  @Override
+  public void createTable() throws DBAppException {
+    // Tables of earlier forks stay in the catalog, so every table gets a new name
+    tableName = "bench" + System.currentTimeMillis() + "_" + tableCount++;
+    tableNames.add(tableName);
+    Hashtable<String, String> columns = new Hashtable<>();
+    columns.put("id", "java.lang.Integer");
+    columns.put("indexed", "java.lang.Integer");
+    columns.put("plain", "java.lang.Integer");
+    columns.put("name", "java.lang.String");
+    app.createTable(tableName, "id", columns);
+    rows = 0;
+  }
+
+  @Override
+  public void load(int rows) throws DBAppException {
+    List<Hashtable<String, Object>> records = new ArrayList<>(rows);
+    for (int key = 0; key < rows; key++) {
+      records.add(record(key * 2));
+    }
+    app.bulkInsert(tableName, records.iterator());
+    this.rows = rows;
+  }
+
+  @Override
+  public void createIndex() throws DBAppException {
+    app.createBitmapIndex(tableName, "indexed");
+  }
+
+  @Override
+  public void checkpoint() throws DBAppException {
+    app.checkpoint();
+  }
+
+  @Override
+  public void insert(int key) throws DBAppException {
+    app.insertIntoTable(tableName, record(key));
+  }
+
+  @Override
+  public void update() throws DBAppException {
+    Hashtable<String, Object> values = new Hashtable<>();
+    values.put("id", random.nextInt(rows) * 2);
+    values.put("plain", random.nextInt(distinctValues));
+    app.updateTable(tableName, "id", values);
+  }
+
+  @Override
+  public void delete() throws DBAppException {
+    Hashtable<String, Object> mask = new Hashtable<>();
+    mask.put("id", random.nextInt(rows) * 2);
+    app.deleteFromTable(tableName, mask);
+  }
+
+  @Override
+  public Iterator<?> select(String query) throws DBAppException {
+    SQLTerm[] terms;
+    switch (query) {
+      case "key":
+        terms = new SQLTerm[]{term("id", "=", random.nextInt(Math.max(1, rows)) * 2)};
+        break;
+      case "indexed":
+        terms = new SQLTerm[]{term("indexed", "=", random.nextInt(distinctValues))};
+        break;
+      case "unindexed":
+        terms = new SQLTerm[]{term("plain", "=", random.nextInt(distinctValues))};
+        break;
+      default:
+        terms = new SQLTerm[]{term("indexed", "=", random.nextInt(distinctValues)),
+            term("plain", "<", random.nextInt(distinctValues))};
+    }
+    String[] operators = new String[terms.length - 1];
+    if (operators.length > 0) {
+      operators[0] = query.toUpperCase();
+    }
+    return app.selectFromTable(terms, operators);
+  }
+
+  @Override
+  public void dropTables() {
+    for (String name : tableNames) {
+      deleteDirectory(new File("data/" + name));
+    }
+  }
+
+  // Private methods
+  private SQLTerm term(String column, String operator, Object value) {
+    SQLTerm term = new SQLTerm();
+    term._strTableName = tableName;
+    term._strColumnName = column;
+    term._strOperator = operator;
+    term._objValue = value;
+    return term;
+  }
+
+  private Hashtable<String, Object> record(int key) {
+    Hashtable<String, Object> record = new Hashtable<>();
+    record.put("id", key);
+    record.put("indexed", random.nextInt(distinctValues));
+    record.put("plain", random.nextInt(distinctValues));
+    record.put("name", "name" + key);
+    return record;
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    directory.delete();
+  }
+}
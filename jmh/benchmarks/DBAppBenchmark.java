@@ -0,0 +1,213 @@
+package benchmarks;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Latency of every DBApp operation. Run it from a scratch directory holding a copy of config/:
+//   mvn -Pjmh -DskipTests package && java -jar target/benchmarks.jar -p rows=1000,10000 -p pageSize=50,200
+// Every combination of the parameters runs in its own fork, which reads the configuration once
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DBAppBenchmark {
+
+  // MaximumRowsCountinPage and BitmapSize of the fork, set before the first table is created
+  @State(Scope.Benchmark)
+  public static class Settings {
+    @Param({"200"})
+    public int pageSize;
+    @Param({"15"})
+    public int bitmapSize;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      Workload.configure(pageSize, bitmapSize);
+    }
+  }
+
+  // Filled and indexed table shared by the selects and the updates
+  @State(Scope.Benchmark)
+  public static class LoadedTable {
+    @Param({"10000"})
+    public int rows;
+    Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp(Settings settings) throws Exception {
+      workload = Workload.create(1);
+      workload.createTable();
+      workload.load(rows);
+      workload.createIndex();
+      workload.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      workload.dropTables();
+    }
+  }
+
+  // Every iteration inserts into a new empty table
+  @State(Scope.Benchmark)
+  public static class EmptyTable {
+    Workload workload;
+    Random random;
+    int nextKey;
+
+    @Setup(Level.Trial)
+    public void setUpTrial(Settings settings) throws Exception {
+      workload = Workload.create(1);
+      random = new Random(1);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+      workload.createTable();
+      nextKey = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      workload.dropTables();
+    }
+  }
+
+  // Every iteration deletes from a new filled table
+  @State(Scope.Benchmark)
+  public static class DeleteTable {
+    @Param({"10000"})
+    public int rows;
+    Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUpTrial(Settings settings) throws Exception {
+      workload = Workload.create(1);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+      workload.createTable();
+      workload.load(rows);
+      workload.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      workload.dropTables();
+    }
+  }
+
+  // Every invocation indexes a new filled table
+  @State(Scope.Benchmark)
+  public static class UnindexedTable {
+    @Param({"10000"})
+    public int rows;
+    Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUpTrial(Settings settings) throws Exception {
+      workload = Workload.create(1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+      workload.createTable();
+      workload.load(rows);
+      workload.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      workload.dropTables();
+    }
+  }
+
+  @Benchmark
+  public void insertSequential(EmptyTable table) throws Exception {
+    table.workload.insert(table.nextKey++);
+  }
+
+  @Benchmark
+  public void insertReverse(EmptyTable table) throws Exception {
+    table.workload.insert(Integer.MAX_VALUE - table.nextKey++);
+  }
+
+  @Benchmark
+  public void insertRandom(EmptyTable table) throws Exception {
+    table.workload.insert(table.random.nextInt(Integer.MAX_VALUE));
+  }
+
+  @Benchmark
+  public void update(LoadedTable table) throws Exception {
+    table.workload.update();
+  }
+
+  @Benchmark
+  public void delete(DeleteTable table) throws Exception {
+    table.workload.delete();
+  }
+
+  @Benchmark
+  public void selectKey(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("key"), blackhole);
+  }
+
+  @Benchmark
+  public void selectIndexed(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("indexed"), blackhole);
+  }
+
+  @Benchmark
+  public void selectUnindexed(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("unindexed"), blackhole);
+  }
+
+  @Benchmark
+  public void selectAnd(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("and"), blackhole);
+  }
+
+  @Benchmark
+  public void selectOr(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("or"), blackhole);
+  }
+
+  @Benchmark
+  public void selectXor(LoadedTable table, Blackhole blackhole) throws Exception {
+    consume(table.workload.select("xor"), blackhole);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Measurement(iterations = 5)
+  @Warmup(iterations = 1)
+  public void createBitmapIndex(UnindexedTable table) throws Exception {
+    table.workload.createIndex();
+  }
+
+  // Private methods
+  private static void consume(Iterator<?> result, Blackhole blackhole) {
+    while (result.hasNext()) {
+      blackhole.consume(result.next());
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.Iterator;
+
+// Operations the benchmarks run against one table. JMH can't generate benchmarks in the default package,
+// so the implementation next to DBApp is loaded by name
+public interface Workload {
+
+  static Workload create(long seed) throws ReflectiveOperationException {
+    return (Workload) Class.forName("DBAppWorkload").getDeclaredConstructor(long.class).newInstance(seed);
+  }
+
+  // Overrides the page and bitmap sizes of the configuration, only before the first table is loaded
+  static void configure(int pageSize, int bitmapSize) throws ReflectiveOperationException {
+    Class.forName("DBAppWorkload").getMethod("configure", int.class, int.class).invoke(null, pageSize, bitmapSize);
+  }
+
+  // Creates a new empty table, later calls use it
+  void createTable() throws Exception;
+
+  // Bulk loads rows with the even keys below twice the row count
+  void load(int rows) throws Exception;
+
+  void createIndex() throws Exception;
+
+  void checkpoint() throws Exception;
+
+  void insert(int key) throws Exception;
+
+  // Changes the unindexed column of a random loaded row
+  void update() throws Exception;
+
+  // Deletes a random loaded row
+  void delete() throws Exception;
+
+  // One of key, indexed, unindexed, and, or and xor
+  Iterator<?> select(String query) throws Exception;
+
+  // Deletes the files of every table the workload created, only once the benchmark is done with them
+  void dropTables();
+}
@@ -0,0 +1,231 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Non blocking facade of DBApp. Operations run on virtual threads when the runtime has them, and on a
+// cached thread pool otherwise. Every table runs a bounded number of operations at a time, the others wait
+// in a queue without holding a thread
+public class AsyncDBApp {
+  private final DBApp app;
+  private final ExecutorService executor;
+  private final int tableOperations;
+  private final ConcurrentHashMap<String, TableQueue> queues;
+
+  private interface Operation<T> {
+    T run() throws DBAppException;
+  }
+
+  public AsyncDBApp() throws DBAppException {
+    this(new DBApp());
+  }
+
+  public AsyncDBApp(DBApp app) throws DBAppException {
+    this.app = app;
+    executor = newExecutor();
+    tableOperations = Math.max(1, MetaData.getAsyncTableOperations());
+    queues = new ConcurrentHashMap<>();
+  }
+
+  public CompletableFuture<Void> insertIntoTable(String tableName, Hashtable<String, Object> record) {
+    return submit(tableName, () -> {
+      app.insertIntoTable(tableName, record);
+      return null;
+    });
+  }
+
+  public CompletableFuture<Void> updateTable(String tableName, String keyCol, Hashtable<String, Object> record) {
+    return submit(tableName, () -> {
+      app.updateTable(tableName, keyCol, record);
+      return null;
+    });
+  }
+
+  public CompletableFuture<Void> deleteFromTable(String tableName, Hashtable<String, Object> mask) {
+    return submit(tableName, () -> {
+      app.deleteFromTable(tableName, mask);
+      return null;
+    });
+  }
+
+  // Collects every matching row, use selectPublisher for big results
+  public CompletableFuture<List<Hashtable<String, Object>>> selectFromTable(SQLTerm[] terms, String[] operators) {
+    return submit(terms[0]._strTableName, () -> {
+      List<Hashtable<String, Object>> rows = new ArrayList<>();
+      Iterator<Hashtable<String, Object>> iterator = app.selectFromTable(terms, operators);
+      while (iterator.hasNext()) {
+        rows.add(iterator.next());
+      }
+      return rows;
+    });
+  }
+
+  // Streams the matching rows, pages are only read as the subscriber requests rows. Every subscriber runs
+  // the query again
+  public Flow.Publisher<Hashtable<String, Object>> selectPublisher(SQLTerm[] terms, String[] operators) {
+    return subscriber -> subscriber.onSubscribe(new SelectSubscription(terms, operators, subscriber));
+  }
+
+  // Stops accepting operations, running operations are completed
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  // Private methods
+  private static ExecutorService newExecutor() {
+    try {
+      // Virtual threads are only available from Java 21
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "async-dbapp");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(String tableName, Operation<T> operation) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    getQueue(tableName).submit(() -> {
+      try {
+        result.complete(operation.run());
+      } catch (DBAppException e) {
+        result.completeExceptionally(e);
+      } catch (Throwable e) {
+        // Iterators report page failures as unchecked exceptions, errors fail the future too so it completes
+        result.completeExceptionally(e.getCause() instanceof DBAppException ? e.getCause() : e);
+      }
+    });
+    return result;
+  }
+
+  private TableQueue getQueue(String tableName) {
+    return queues.computeIfAbsent(tableName, name -> new TableQueue());
+  }
+
+  // Runs at most tableOperations tasks of a table at once
+  private class TableQueue {
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    void submit(Runnable task) {
+      synchronized (this) {
+        if (running == tableOperations) {
+          waiting.add(task);
+          return;
+        }
+        running++;
+      }
+      start(task);
+    }
+
+    private void start(Runnable task) {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          finish();
+        }
+      });
+    }
+
+    private void finish() {
+      Runnable next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          running--;
+          return;
+        }
+      }
+      // The finished task hands its slot to the next one
+      start(next);
+    }
+  }
+
+  // Emits the rows of a select as they are requested. Rows are read in batches on the table queue, only one
+  // batch runs at a time so the subscriber is signalled serially
+  private class SelectSubscription implements Flow.Subscription {
+    private final SQLTerm[] terms;
+    private final String[] operators;
+    private final Flow.Subscriber<? super Hashtable<String, Object>> subscriber;
+    private final AtomicLong demand;
+    // Requests that arrived while a batch was running, the batch that sees them schedules the next one
+    private final AtomicInteger pending;
+    private Iterator<Hashtable<String, Object>> iterator;
+    private volatile boolean done;
+
+    SelectSubscription(SQLTerm[] terms, String[] operators, Flow.Subscriber<? super Hashtable<String, Object>> subscriber) {
+      this.terms = terms;
+      this.operators = operators;
+      this.subscriber = subscriber;
+      demand = new AtomicLong();
+      pending = new AtomicInteger();
+    }
+
+    @Override
+    public void request(long n) {
+      if (done) {
+        return;
+      }
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Requested rows must be positive"));
+        return;
+      }
+      demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      // The snapshot of the select is released once the iterator is collected
+      done = true;
+    }
+
+    private void schedule() {
+      if (pending.getAndIncrement() == 0) {
+        getQueue(terms[0]._strTableName).submit(this::emit);
+      }
+    }
+
+    private void emit() {
+      int seen = pending.get();
+      try {
+        if (iterator == null && !done) {
+          iterator = app.selectFromTable(terms, operators);
+        }
+        while (!done && demand.get() > 0 && iterator.hasNext()) {
+          demand.decrementAndGet();
+          subscriber.onNext(iterator.next());
+        }
+        if (!done && !iterator.hasNext()) {
+          done = true;
+          subscriber.onComplete();
+        }
+      } catch (Throwable e) {
+        if (!done) {
+          done = true;
+          // Iterators report page failures as unchecked exceptions
+          subscriber.onError(e.getCause() instanceof DBAppException ? e.getCause() : e);
+        }
+      }
+      if (done) {
+        iterator = null;
+      }
+      // Run again for requests that came in meanwhile, the queue slot is handed back in between
+      if (pending.addAndGet(-seen) != 0 && !done) {
+        getQueue(terms[0]._strTableName).submit(this::emit);
+      }
+    }
+  }
+}
@@ -1,40 +1,24 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 public class Bitmap<T extends Comparable<T>> implements Comparable<Bitmap<T>>, Serializable {
+  private static final long serialVersionUID = 4700313542422910387L;
   T value;
-  ArrayList<ArrayList<Boolean>> bitmap;
+  CompressedBitmap bits;
+  // Uncompressed bits of index pages written before bitmaps were compressed
+  private ArrayList<ArrayList<Boolean>> bitmap;
 
-  Bitmap(T value, int pageIndex, T[] tablePage, int[] sizes) {
+  Bitmap(T value, int pageId, T[] tablePage) {
     this.value = value;
-    bitmap = new ArrayList<>();
-    for (int i = 0; i < sizes.length; i++) {
-      int size = sizes[i];
-      ArrayList<Boolean> tmp = new ArrayList<>();
-      if(i != pageIndex) {
-        for (int j = 0; j < size; j++) {
-          tmp.add(false);
-        }
-      } else {
-        if(size != tablePage.length){
-          for(int j=0; j<size; j++) {
-            tmp.add(tablePage[j].equals(value));
-          }
-        }
-      }
-      bitmap.add(tmp);
-    }
+    bits = new CompressedBitmap();
+    bits.setPage(pageId, CompressedBitmap.matches(value, tablePage));
   }
 
-  boolean[][] toMap() {
-    boolean[][] result = new boolean[bitmap.size()][];
-    for (int i = 0; i < result.length; i++) {
-      result[i] = new boolean[bitmap.get(i).size()];
-      for (int j = 0; j < result[i].length; j++) {
-        result[i][j] = bitmap.get(i).get(j);
-      }
-    }
-    return result;
+  Bitmap(T value, CompressedBitmap bits) {
+    this.value = value;
+    this.bits = bits;
   }
 
   @Override
@@ -43,13 +27,25 @@ public class Bitmap<T extends Comparable<T>> implements Comparable<Bitmap<T>>, S
   }
 
   boolean isEmpty() {
-    for (ArrayList<Boolean> map : bitmap) {
-      for (Boolean bit : map) {
-        if (bit) {
-          return false;
+    return bits.isEmpty();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (bits == null) {
+      // Compress the legacy bits
+      bits = new CompressedBitmap();
+      for (int page = 0; page < bitmap.size(); page++) {
+        ArrayList<Boolean> map = bitmap.get(page);
+        long[] words = new long[CompressedBitmap.wordCount(map.size())];
+        for (int row = 0; row < map.size(); row++) {
+          if (map.get(row)) {
+            words[row >>> 6] |= 1L << row;
+          }
         }
+        bits.setPage(page, words);
       }
+      bitmap = null;
     }
-    return true;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+class BufferPool {
+  private static BufferPool pool;
+  // Set while the pool holds more pages than its capacity because only dirty pages were left to evict
+  private static volatile boolean overflowing;
+  // Access ordered map, the eldest entry is the least recently used page
+  private LinkedHashMap<String, Page> pages;
+  // Pages being read from disk, keyed like pages
+  private HashMap<String, FutureTask<Page>> loading;
+  private int capacity;
+  private long hits;
+  private long misses;
+
+  static TablePage getTablePage(File pageFile, int pageId, Column[] schema) throws DBAppException {
+    return (TablePage) getPage(pageFile, () -> TablePage.loadPage(pageFile, pageId, schema));
+  }
+
+  static IndexPage getIndexPage(File pageFile) throws DBAppException {
+    IndexPage page = (IndexPage) getPage(pageFile, () -> IndexPage.loadPage(pageFile));
+    page.getMetrics().indexPagesTouched.increment();
+    return page;
+  }
+
+  static synchronized void markDirty(Page page) throws DBAppException {
+    // Re-register the page in case it was evicted while the caller was holding it
+    if (getPool().pages.get(key(page.getPageFile())) != page) {
+      add(page);
+    }
+  }
+
+  // Changed pages stored under the directory, they are only written by checkpoints
+  static synchronized List<Page> getDirtyPages(File directory) throws DBAppException {
+    String prefix = key(directory) + File.separator;
+    List<Page> dirtyPages = new ArrayList<>();
+    for (Map.Entry<String, Page> entry : getPool().pages.entrySet()) {
+      if (entry.getValue().isChanged() && entry.getKey().startsWith(prefix)) {
+        dirtyPages.add(entry.getValue());
+      }
+    }
+    return dirtyPages;
+  }
+
+  // Drops written pages that were emptied, their files were deleted and should not be served again. The
+  // written pages are clean now, so the pool shrinks back to its capacity
+  static synchronized void removeEmptyPages(List<Page> writtenPages) throws DBAppException {
+    for (Page page : writtenPages) {
+      if (page.isEmpty()) {
+        getPool().pages.remove(key(page.getPageFile()));
+      }
+    }
+    evict();
+  }
+
+  // Forgets a page whose file is no longer used, without writing it
+  static synchronized void discard(File pageFile) throws DBAppException {
+    getPool().pages.remove(key(pageFile));
+  }
+
+  // Forgets every page stored under the directory, changed or not, without writing it
+  static synchronized void discardDirectory(File directory) throws DBAppException {
+    String prefix = key(directory) + File.separator;
+    getPool().pages.keySet().removeIf(key -> key.startsWith(prefix));
+    evict();
+  }
+
+  // Drops every page without writing it
+  static synchronized void reset() {
+    pool = null;
+    overflowing = false;
+  }
+
+  // Checks if the pool is over its capacity with dirty pages, their tables have to be checkpointed
+  static boolean isOverflowing() {
+    return overflowing;
+  }
+
+  // Checks if so many pages wait for a checkpoint that clean pages hardly fit anymore
+  static synchronized boolean isMostlyDirty() throws DBAppException {
+    BufferPool bufferPool = getPool();
+    int dirty = 0;
+    for (Page page : bufferPool.pages.values()) {
+      if (page.isChanged()) {
+        dirty++;
+      }
+    }
+    return dirty * 2 >= bufferPool.capacity;
+  }
+
+  static synchronized long getHitCount() {
+    return pool == null ? 0 : pool.hits;
+  }
+
+  static synchronized long getMissCount() {
+    return pool == null ? 0 : pool.misses;
+  }
+
+  // Private methods
+  private static Page getPage(File pageFile, Callable<Page> loader) throws DBAppException {
+    String key = key(pageFile);
+    FutureTask<Page> load;
+    boolean loading = false;
+    synchronized (BufferPool.class) {
+      BufferPool bufferPool = getPool();
+      Page page = bufferPool.pages.get(key);
+      if (page != null) {
+        bufferPool.hits++;
+        page.getMetrics().cacheHits.increment();
+        return page;
+      }
+      // The first thread to miss a page latches it, later threads wait for its read instead of reading again
+      load = bufferPool.loading.get(key);
+      if (load == null) {
+        bufferPool.misses++;
+        load = new FutureTask<>(loader);
+        bufferPool.loading.put(key, load);
+        loading = true;
+      } else {
+        bufferPool.hits++;
+      }
+    }
+    if (loading) {
+      // Pages are read outside the lock so scans of different pages overlap
+      load.run();
+    }
+    try {
+      Page loaded = load.get();
+      // Threads that waited for another thread's read count as hits
+      (loading ? loaded.getMetrics().cacheMisses : loaded.getMetrics().cacheHits).increment();
+      synchronized (BufferPool.class) {
+        BufferPool bufferPool = getPool();
+        bufferPool.loading.remove(key, load);
+        // A caller may have registered a page it was still holding while the page was read
+        Page cached = bufferPool.pages.get(key);
+        if (cached != null) {
+          return cached;
+        }
+        add(loaded);
+        return loaded;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DBAppException("Interrupted while loading page");
+    } catch (ExecutionException e) {
+      synchronized (BufferPool.class) {
+        // Later callers read the page again
+        pool.loading.remove(key, load);
+      }
+      if (e.getCause() instanceof DBAppException) {
+        throw (DBAppException) e.getCause();
+      }
+      throw new DBAppException("Could not load page: " + e.getCause());
+    }
+  }
+
+  private static void add(Page page) throws DBAppException {
+    getPool().pages.put(key(page.getPageFile()), page);
+    evict();
+  }
+
+  private static void evict() throws DBAppException {
+    BufferPool bufferPool = getPool();
+    // Evict least recently used clean pages, dirty pages stay until the next checkpoint writes them
+    Iterator<Page> iterator = bufferPool.pages.values().iterator();
+    int excess = bufferPool.pages.size() - bufferPool.capacity;
+    while (excess > 0 && iterator.hasNext()) {
+      if (!iterator.next().isChanged()) {
+        iterator.remove();
+        excess--;
+      }
+    }
+    overflowing = excess > 0;
+  }
+
+  private static String key(File pageFile) {
+    return pageFile.getAbsolutePath();
+  }
+
+  private static synchronized BufferPool getPool() throws DBAppException {
+    if (pool == null) {
+      pool = new BufferPool();
+      pool.capacity = Math.max(1, MetaData.getBufferPoolSize());
+      pool.pages = new LinkedHashMap<>(16, 0.75f, true);
+      pool.loading = new HashMap<>();
+    }
+    return pool;
+  }
+}
@@ -1,11 +1,13 @@
 import java.io.Serializable;
 
 public class Column implements Serializable {
+  private static final long serialVersionUID = -55687750603250126L;
   private String tableName;
   private String name;
   private String type;
   private boolean isKey;
-  private boolean indexed;
+  // Set by an index build while other threads read the catalog
+  private volatile boolean indexed;
 
   Column(String tableName, String name, String type, boolean isKey, boolean indexed) {
     this.tableName = tableName;
@@ -36,6 +38,10 @@ public class Column implements Serializable {
     return name;
   }
 
+  boolean isKey() {
+    return isKey;
+  }
+
   String getType() {
     return type;
   }
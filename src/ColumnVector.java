@@ -0,0 +1,374 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+// One column of a columnar table page. Integers are kept in an int array, doubles and dates in a long
+// array, booleans in a bitset and strings as codes into the sorted distinct strings of the page, so code
+// order is string order. Terms are evaluated as a range check over the array, 64 rows per bitmap word
+// without branches or calls per row. On disk strings are stored as codes of the table dictionary
+class ColumnVector {
+  private final byte type;
+  private final int size;
+  // Rows that have a value
+  private final long[] present;
+  // Integers and string codes
+  private int[] ints;
+  // Dates, and doubles as bits that sort like the doubles
+  private long[] longs;
+  // Booleans, one bit per row
+  private long[] bits;
+  private String[] dictionary;
+
+  private ColumnVector(byte type, int size) {
+    this.type = type;
+    this.size = size;
+    present = new long[words(size)];
+  }
+
+  static int words(int rows) {
+    return (rows + 63) >>> 6;
+  }
+
+  static ColumnVector fromRows(List<Row> rows, int column, byte type) {
+    ColumnVector vector = new ColumnVector(type, rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      if (rows.get(i).isPresent(column)) {
+        vector.present[i >>> 6] |= 1L << i;
+      }
+    }
+    switch (type) {
+      case Row.INTEGER:
+        vector.ints = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+          vector.ints[i] = (int) rows.get(i).getBits(column);
+        }
+        break;
+      case Row.DOUBLE:
+      case Row.DATE:
+        vector.longs = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+          long value = rows.get(i).getBits(column);
+          vector.longs[i] = type == Row.DOUBLE ? sortable(value) : value;
+        }
+        break;
+      case Row.BOOLEAN:
+        vector.bits = new long[words(rows.size())];
+        for (int i = 0; i < rows.size(); i++) {
+          vector.bits[i >>> 6] |= rows.get(i).getBits(column) << i;
+        }
+        break;
+      default:
+        String[] strings = new String[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+          strings[i] = rows.get(i).getString(column);
+        }
+        vector.setStrings(strings);
+    }
+    return vector;
+  }
+
+  // Reads a vector written by encode, strings of pages written before table dictionaries were kept in the
+  // page and the dictionary is null
+  static ColumnVector decode(ByteBuffer buffer, byte type, int size, StringDictionary dictionary) {
+    ColumnVector vector = new ColumnVector(type, size);
+    buffer.asLongBuffer().get(vector.present);
+    buffer.position(buffer.position() + vector.present.length * 8);
+    switch (type) {
+      case Row.INTEGER:
+        vector.ints = new int[size];
+        buffer.asIntBuffer().get(vector.ints);
+        break;
+      case Row.DOUBLE:
+      case Row.DATE:
+        vector.longs = new long[size];
+        buffer.asLongBuffer().get(vector.longs);
+        if (type == Row.DOUBLE) {
+          for (int i = 0; i < size; i++) {
+            vector.longs[i] = sortable(vector.longs[i]);
+          }
+        }
+        break;
+      case Row.BOOLEAN:
+        vector.bits = new long[words(size)];
+        buffer.asLongBuffer().get(vector.bits);
+        break;
+      default:
+        String[] pageStrings = new String[buffer.getInt()];
+        for (int i = 0; i < pageStrings.length; i++) {
+          int length = buffer.getInt();
+          pageStrings[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+          buffer.position(buffer.position() + length);
+        }
+        int[] codes = new int[size];
+        buffer.asIntBuffer().get(codes);
+        if (dictionary == null) {
+          vector.dictionary = pageStrings;
+          vector.ints = codes;
+          break;
+        }
+        String[] strings = new String[size];
+        for (int i = 0; i < size; i++) {
+          if ((vector.present[i >>> 6] & (1L << i)) != 0) {
+            strings[i] = codes[i] >= 0 ? dictionary.decode(codes[i]) : pageStrings[-codes[i] - 1];
+          }
+        }
+        vector.setStrings(strings);
+    }
+    return vector;
+  }
+
+  // Size of the vector written by encode, with the encoded strings of the dictionary
+  int getEncodedSize(byte[][] strings) {
+    int encodedSize = present.length * 8;
+    switch (type) {
+      case Row.INTEGER:
+        return encodedSize + size * 4;
+      case Row.DOUBLE:
+      case Row.DATE:
+        return encodedSize + size * 8;
+      case Row.BOOLEAN:
+        return encodedSize + bits.length * 8;
+      default:
+        encodedSize += 4 + size * 4;
+        for (byte[] string : strings) {
+          encodedSize += 4 + string.length;
+        }
+        return encodedSize;
+    }
+  }
+
+  // Table dictionary codes of the strings of the page. Strings the table dictionary has no room for are kept
+  // in the page and get the codes -1, -2 and so on
+  int[] getTableCodes(StringDictionary tableDictionary) {
+    if (dictionary == null) {
+      return new int[0];
+    }
+    int[] codes = new int[dictionary.length];
+    int pageStrings = 0;
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = tableDictionary.encode(dictionary[i]);
+      if (codes[i] < 0) {
+        codes[i] = -++pageStrings;
+      }
+    }
+    return codes;
+  }
+
+  // Strings kept in the page as written by encode
+  byte[][] getEncodedStrings(int[] tableCodes) {
+    int count = 0;
+    for (int code : tableCodes) {
+      count += code < 0 ? 1 : 0;
+    }
+    byte[][] strings = new byte[count][];
+    for (int i = 0; i < tableCodes.length; i++) {
+      if (tableCodes[i] < 0) {
+        strings[-tableCodes[i] - 1] = dictionary[i].getBytes(StandardCharsets.UTF_8);
+      }
+    }
+    return strings;
+  }
+
+  void encode(ByteBuffer buffer, byte[][] strings, int[] tableCodes) {
+    for (long word : present) {
+      buffer.putLong(word);
+    }
+    switch (type) {
+      case Row.INTEGER:
+        for (int value : ints) {
+          buffer.putInt(value);
+        }
+        break;
+      case Row.DOUBLE:
+      case Row.DATE:
+        for (long value : longs) {
+          buffer.putLong(type == Row.DOUBLE ? sortable(value) : value);
+        }
+        break;
+      case Row.BOOLEAN:
+        for (long word : bits) {
+          buffer.putLong(word);
+        }
+        break;
+      default:
+        buffer.putInt(strings.length);
+        for (byte[] string : strings) {
+          buffer.putInt(string.length);
+          buffer.put(string);
+        }
+        for (int row = 0; row < size; row++) {
+          // Rows without a value keep code 0
+          buffer.putInt((present[row >>> 6] & (1L << row)) != 0 ? tableCodes[ints[row]] : 0);
+        }
+    }
+  }
+
+  // Copies the value of a row into the column of a row object
+  void copyTo(int row, Row target, int column) {
+    if ((present[row >>> 6] & (1L << row)) == 0) {
+      return;
+    }
+    switch (type) {
+      case Row.INTEGER:
+        target.setBits(column, ints[row]);
+        break;
+      case Row.DOUBLE:
+        target.setBits(column, sortable(longs[row]));
+        break;
+      case Row.DATE:
+        target.setBits(column, longs[row]);
+        break;
+      case Row.BOOLEAN:
+        target.setBits(column, (bits[row >>> 6] >>> row) & 1);
+        break;
+      default:
+        target.setString(column, dictionary[ints[row]]);
+    }
+  }
+
+  Comparable get(int row) {
+    if ((present[row >>> 6] & (1L << row)) == 0) {
+      return null;
+    }
+    switch (type) {
+      case Row.INTEGER:
+        return ints[row];
+      case Row.DOUBLE:
+        return Double.longBitsToDouble(sortable(longs[row]));
+      case Row.DATE:
+        return new Date(longs[row]);
+      case Row.BOOLEAN:
+        return ((bits[row >>> 6] >>> row) & 1) != 0;
+      default:
+        return dictionary[ints[row]];
+    }
+  }
+
+  // Bitmap of the rows matching the term, rows without a value never match
+  long[] select(Predicate term) {
+    // The term becomes the range [low, high] of the array values, != is the rows outside it
+    long low;
+    long high;
+    if (type == Row.STRING) {
+      int position = Arrays.binarySearch(dictionary, (String) term.value);
+      if (position < 0) {
+        // The value falls between two codes
+        int next = -position - 1;
+        switch (term.operator) {
+          case Predicate.EQUAL:
+            return new long[present.length];
+          case Predicate.NOT_EQUAL:
+            return present.clone();
+          case Predicate.LESS:
+          case Predicate.LESS_OR_EQUAL:
+            return range(Long.MIN_VALUE, next - 1, false);
+          default:
+            return range(next, Long.MAX_VALUE, false);
+        }
+      }
+      low = high = position;
+    } else {
+      low = high = key(term.value);
+    }
+    switch (term.operator) {
+      case Predicate.EQUAL:
+        return range(low, high, false);
+      case Predicate.NOT_EQUAL:
+        return range(low, high, true);
+      case Predicate.LESS:
+        return low == Long.MIN_VALUE ? new long[present.length] : range(Long.MIN_VALUE, low - 1, false);
+      case Predicate.LESS_OR_EQUAL:
+        return range(Long.MIN_VALUE, high, false);
+      case Predicate.GREATER:
+        return high == Long.MAX_VALUE ? new long[present.length] : range(high + 1, Long.MAX_VALUE, false);
+      default:
+        return range(low, Long.MAX_VALUE, false);
+    }
+  }
+
+  // Private methods
+  // Builds the sorted distinct strings of the page and the codes of the rows, null for rows without a value
+  private void setStrings(String[] strings) {
+    String[] sorted = new String[strings.length];
+    int count = 0;
+    for (String string : strings) {
+      if (string != null) {
+        sorted[count++] = string;
+      }
+    }
+    Arrays.sort(sorted, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    dictionary = Arrays.copyOf(sorted, distinct);
+    ints = new int[strings.length];
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i] != null) {
+        ints[i] = Arrays.binarySearch(dictionary, strings[i]);
+      }
+    }
+  }
+
+  private long key(Comparable value) {
+    switch (type) {
+      case Row.INTEGER:
+        return (Integer) value;
+      case Row.DOUBLE:
+        return sortable(Double.doubleToRawLongBits((Double) value));
+      case Row.DATE:
+        return ((Date) value).getTime();
+      default:
+        return (Boolean) value ? 1 : 0;
+    }
+  }
+
+  // Rows with a value in [low, high], or outside of it when inverted. An empty range has low > high
+  private long[] range(long low, long high, boolean invert) {
+    long[] selected = new long[present.length];
+    if (low <= high) {
+      // Values in the range are the ones whose distance from low fits in the span as an unsigned number
+      long span = high - low;
+      if (type == Row.BOOLEAN) {
+        long matchTrue = low <= 1 && 1 <= high ? -1L : 0;
+        long matchFalse = low <= 0 && 0 <= high ? -1L : 0;
+        for (int word = 0; word < selected.length; word++) {
+          selected[word] = (bits[word] & matchTrue) | (~bits[word] & matchFalse);
+        }
+      } else if (ints != null) {
+        for (int word = 0; word < selected.length; word++) {
+          int base = word << 6;
+          int end = Math.min(64, size - base);
+          long matches = 0;
+          for (int bit = 0; bit < end; bit++) {
+            matches |= (Long.compareUnsigned(ints[base + bit] - low, span) <= 0 ? 1L : 0L) << bit;
+          }
+          selected[word] = matches;
+        }
+      } else {
+        for (int word = 0; word < selected.length; word++) {
+          int base = word << 6;
+          int end = Math.min(64, size - base);
+          long matches = 0;
+          for (int bit = 0; bit < end; bit++) {
+            matches |= (Long.compareUnsigned(longs[base + bit] - low, span) <= 0 ? 1L : 0L) << bit;
+          }
+          selected[word] = matches;
+        }
+      }
+    }
+    for (int word = 0; word < selected.length; word++) {
+      selected[word] = (invert ? ~selected[word] : selected[word]) & present[word];
+    }
+    return selected;
+  }
+
+  // Bits of a double that compare as signed longs like Double.compare, the mapping is its own inverse
+  private static long sortable(long bits) {
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+}
@@ -0,0 +1,209 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+// Set of row locations stored as one container of 64 bit words per table page id. Pages without any set
+// bit take no container, but the bits within a page are a plain bitset and not run-length encoded: a page
+// holds at most MaximumRowsCountinPage rows, so a container is a few words at the default page size
+class CompressedBitmap implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final long[] NO_WORDS = new long[0];
+  // Ids of the pages that have a container, ascending
+  private int[] keys;
+  private long[][] containers;
+  private int size;
+
+  CompressedBitmap() {
+    keys = new int[4];
+    containers = new long[4][];
+  }
+
+  // Bitmap with every row of every page set, page sizes are keyed by page id
+  static CompressedBitmap full(Map<Integer, Integer> pageSizes) {
+    CompressedBitmap bitmap = new CompressedBitmap();
+    Integer[] pages = pageSizes.keySet().toArray(new Integer[0]);
+    Arrays.sort(pages);
+    for (int page : pages) {
+      int rows = pageSizes.get(page);
+      long[] words = new long[wordCount(rows)];
+      for (int row = 0; row < rows; row++) {
+        words[row >>> 6] |= 1L << row;
+      }
+      bitmap.setPage(page, words);
+    }
+    return bitmap;
+  }
+
+  // Bitmap of the rows in a page that are equal to the value
+  static <T extends Comparable<T>> long[] matches(T value, T[] pageValues) {
+    long[] words = new long[wordCount(pageValues.length)];
+    boolean any = false;
+    for (int row = 0; row < pageValues.length; row++) {
+      if (value.compareTo(pageValues[row]) == 0) {
+        words[row >>> 6] |= 1L << row;
+        any = true;
+      }
+    }
+    return any ? words : NO_WORDS;
+  }
+
+  static int wordCount(int rows) {
+    return (rows + 63) >>> 6;
+  }
+
+  // Returns the words of a page, or null if none of its rows are set
+  long[] getPage(int page) {
+    int index = find(page);
+    return index < 0 ? null : containers[index];
+  }
+
+  boolean hasPage(int page) {
+    return find(page) >= 0;
+  }
+
+  void setPage(int page, long[] words) {
+    int index = find(page);
+    if (isZero(words)) {
+      if (index >= 0) {
+        removeContainer(index);
+      }
+    } else if (index >= 0) {
+      containers[index] = words;
+    } else {
+      insertContainer(-index - 1, page, words);
+    }
+  }
+
+  // Ids of the pages that have at least one set bit, ascending
+  int[] getPages() {
+    return Arrays.copyOf(keys, size);
+  }
+
+  void and(CompressedBitmap other) {
+    int write = 0;
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      while (j < other.size && other.keys[j] < keys[i]) {
+        j++;
+      }
+      if (j == other.size || other.keys[j] != keys[i]) {
+        continue;
+      }
+      long[] words = containers[i];
+      long[] otherWords = other.containers[j];
+      boolean any = false;
+      for (int w = 0; w < words.length; w++) {
+        words[w] &= w < otherWords.length ? otherWords[w] : 0;
+        any |= words[w] != 0;
+      }
+      if (any) {
+        keys[write] = keys[i];
+        containers[write++] = words;
+      }
+    }
+    Arrays.fill(containers, write, size, null);
+    size = write;
+  }
+
+  void or(CompressedBitmap other) {
+    for (int j = 0; j < other.size; j++) {
+      int index = find(other.keys[j]);
+      if (index < 0) {
+        insertContainer(-index - 1, other.keys[j], other.containers[j].clone());
+      } else {
+        containers[index] = combine(containers[index], other.containers[j], false);
+      }
+    }
+  }
+
+  void xor(CompressedBitmap other) {
+    for (int j = 0; j < other.size; j++) {
+      int index = find(other.keys[j]);
+      if (index < 0) {
+        insertContainer(-index - 1, other.keys[j], other.containers[j].clone());
+      } else {
+        long[] words = combine(containers[index], other.containers[j], true);
+        if (isZero(words)) {
+          removeContainer(index);
+        } else {
+          containers[index] = words;
+        }
+      }
+    }
+  }
+
+  // Complements the bitmap within the rows of the universe
+  void not(CompressedBitmap universe) {
+    CompressedBitmap complement = universe.copy();
+    complement.xor(this);
+    keys = complement.keys;
+    containers = complement.containers;
+    size = complement.size;
+  }
+
+  // Number of set rows
+  long cardinality() {
+    long count = 0;
+    for (int i = 0; i < size; i++) {
+      for (long word : containers[i]) {
+        count += Long.bitCount(word);
+      }
+    }
+    return count;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  CompressedBitmap copy() {
+    CompressedBitmap copy = new CompressedBitmap();
+    copy.keys = Arrays.copyOf(keys, Math.max(4, size));
+    copy.containers = new long[copy.keys.length][];
+    for (int i = 0; i < size; i++) {
+      copy.containers[i] = containers[i].clone();
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  // Private methods
+  private int find(int page) {
+    return Arrays.binarySearch(keys, 0, size, page);
+  }
+
+  private void insertContainer(int index, int page, long[] words) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containers, index, containers, index + 1, size - index);
+    keys[index] = page;
+    containers[index] = words;
+    size++;
+  }
+
+  private void removeContainer(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+    containers[--size] = null;
+  }
+
+  private static long[] combine(long[] words, long[] otherWords, boolean exclusive) {
+    long[] result = words.length >= otherWords.length ? words : Arrays.copyOf(words, otherWords.length);
+    for (int w = 0; w < otherWords.length; w++) {
+      result[w] = exclusive ? result[w] ^ otherWords[w] : result[w] | otherWords[w];
+    }
+    return result;
+  }
+
+  private static boolean isZero(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,6 +1,7 @@
 import java.io.File;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 
 public class DBApp {
 
@@ -24,30 +25,159 @@ public class DBApp {
 
   public void insertIntoTable(String tableName, Hashtable<String, Object> record) throws DBAppException {
     // Get the table instance from the metaData
-    Table table = getTableFromMeta(tableName, record);
-    // Adding the record to the table
-    table.insert(record);
+    long start = System.nanoTime();
+    try {
+      Table table = getTableFromMeta(tableName, record);
+      // Adding the record to the table
+      table.commit(table.insert(record));
+    } finally {
+      Metrics.Operation.INSERT.record(start);
+    }
+  }
+
+  // Loads many rows at once, the rows are sorted by key on disk and merged with the existing pages,
+  // the load is not logged but only becomes visible once it is complete
+  public void bulkInsert(String tableName, Iterator<Hashtable<String, Object>> rows) throws DBAppException {
+    // Check if the table exists
+    if (!MetaData.containsTable(tableName)) {
+      throw new DBAppException("The table " + tableName + " does not exist.");
+    }
+    long start = System.nanoTime();
+    try {
+      MetaData.getTable(tableName).bulkInsert(rows);
+    } finally {
+      Metrics.Operation.BULK_INSERT.record(start);
+    }
   }
 
   public void updateTable(String tableName, String keyCol, Hashtable<String, Object> record) throws DBAppException {
-    // Get table from meta
-    Table table = getTableFromMeta(tableName, record);
-    table.update(keyCol, record);
+    updateTable(tableName, keyCol, record, MetaData.getScanParallelism());
+  }
+
+  // The parallelism is the number of pages scanned at the same time
+  public void updateTable(String tableName, String keyCol, Hashtable<String, Object> record, int parallelism)
+      throws DBAppException {
+    long start = System.nanoTime();
+    try {
+      // Get table from meta
+      Table table = getTableFromMeta(tableName, record);
+      table.commit(table.update(keyCol, record, parallelism));
+    } finally {
+      Metrics.Operation.UPDATE.record(start);
+    }
   }
 
   public void deleteFromTable(String tableName, Hashtable<String, Object> mask) throws DBAppException {
-    // Get table from meta
-    Table table = MetaData.getTable(tableName);
-    // Create a comparable hashtable
-    table.delete(mask);
+    deleteFromTable(tableName, mask, MetaData.getScanParallelism());
+  }
+
+  public void deleteFromTable(String tableName, Hashtable<String, Object> mask, int parallelism)
+      throws DBAppException {
+    long start = System.nanoTime();
+    try {
+      // Get table from meta
+      Table table = MetaData.getTable(tableName);
+      table.commit(table.delete(mask, parallelism));
+    } finally {
+      Metrics.Operation.DELETE.record(start);
+    }
   }
 
   public void createBitmapIndex(String tableName, String colName) throws DBAppException {
-    Table table = MetaData.getTable(tableName);
-    table.createBitmapIndex(colName);
+    createBitmapIndex(tableName, colName, MetaData.getIndexCodec());
+  }
+
+  public void createBitmapIndex(String tableName, String colName, String codec) throws DBAppException {
+    createBitmapIndex(tableName, colName, IndexCodec.fromName(codec));
+  }
+
+  private void createBitmapIndex(String tableName, String colName, IndexCodec codec) throws DBAppException {
+    long start = System.nanoTime();
+    try {
+      MetaData.createBitmapIndex(tableName, colName, codec);
+    } finally {
+      Metrics.Operation.CREATE_INDEX.record(start);
+    }
+  }
+
+  public void analyzeTable(String tableName) throws DBAppException {
+    // Check if the table exists
+    if (!MetaData.containsTable(tableName)) {
+      throw new DBAppException("The table " + tableName + " does not exist.");
+    }
+    long start = System.nanoTime();
+    try {
+      MetaData.getTable(tableName).analyze();
+    } finally {
+      Metrics.Operation.ANALYZE.record(start);
+    }
+  }
+
+  // Writes every dirty page and empties the logs, for example before shutting down
+  public void checkpoint() throws DBAppException {
+    long start = System.nanoTime();
+    try {
+      MetaData.checkpoint();
+    } finally {
+      Metrics.Operation.CHECKPOINT.record(start);
+    }
   }
 
   public Iterator selectFromTable(SQLTerm[] terms, String[] operators) throws DBAppException {
+    return selectFromTable(terms, operators, MetaData.getScanParallelism());
+  }
+
+  public Iterator selectFromTable(SQLTerm[] terms, String[] operators, int parallelism) throws DBAppException {
+    String tableName = terms[0]._strTableName;
+    // Check if the table exists
+    if (!MetaData.containsTable(tableName)) {
+      throw new DBAppException("The table " + tableName + " does not exist.");
+    }
+    // Covers planning and opening the result, rows are read later by the caller
+    long start = System.nanoTime();
+    try {
+      Table table = MetaData.getTable(tableName);
+      MetaData.validateQuery(terms, operators);
+      return table.select(terms, operators, parallelism);
+    } finally {
+      Metrics.Operation.SELECT.record(start);
+    }
+  }
+
+  // Access path of every term and the estimated pages and rows of a select, without running it
+  public QueryPlan explain(SQLTerm[] terms, String[] operators) throws DBAppException {
+    return explain(terms, operators, false);
+  }
+
+  // Runs the select and adds the pages, index pages and rows it actually touched and the time of every stage
+  public QueryPlan explainAnalyze(SQLTerm[] terms, String[] operators) throws DBAppException {
+    return explain(terms, operators, true);
+  }
+
+  public long getBufferPoolHits() {
+    return BufferPool.getHitCount();
+  }
+
+  public long getBufferPoolMisses() {
+    return BufferPool.getMissCount();
+  }
+
+  // Page and index I/O, cache and row counters of the table since the process started
+  public Map<String, Long> getTableMetrics(String tableName) throws DBAppException {
+    // Check if the table exists
+    if (!MetaData.containsTable(tableName)) {
+      throw new DBAppException("The table " + tableName + " does not exist.");
+    }
+    return Metrics.forTable(tableName).getValues();
+  }
+
+  // Count, mean, max and percentiles in nanoseconds of an operation: insert, bulk_insert, update, delete,
+  // select, create_index, analyze or checkpoint
+  public Map<String, Long> getOperationLatencies(String operation) throws DBAppException {
+    return Metrics.getOperation(operation).getLatencies();
+  }
+
+  private QueryPlan explain(SQLTerm[] terms, String[] operators, boolean analyze) throws DBAppException {
     String tableName = terms[0]._strTableName;
     // Check if the table exists
     if (!MetaData.containsTable(tableName)) {
@@ -55,7 +185,7 @@ public class DBApp {
     }
     Table table = MetaData.getTable(tableName);
     MetaData.validateQuery(terms, operators);
-    return table.select(terms, operators);
+    return table.explain(terms, operators, analyze, MetaData.getScanParallelism());
   }
 
   private Table getTableFromMeta(String tableName, Hashtable<String, Object> record) throws DBAppException {
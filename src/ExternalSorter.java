@@ -0,0 +1,155 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+// Sorts rows by a column in bounded memory, full buffers are sorted and spilled to run files that are
+// merged at the end
+class ExternalSorter {
+  private final String column;
+  private final int runSize;
+  private final File directory;
+  private final ArrayList<Hashtable<String, Object>> buffer;
+  private final List<File> runs;
+  private final List<Integer> runLengths;
+
+  ExternalSorter(String column, int runSize, File directory) {
+    this.column = column;
+    this.runSize = Math.max(1, runSize);
+    this.directory = directory;
+    buffer = new ArrayList<>();
+    runs = new ArrayList<>();
+    runLengths = new ArrayList<>();
+  }
+
+  void add(Hashtable<String, Object> row) throws DBAppException {
+    buffer.add(row);
+    if (buffer.size() >= runSize) {
+      spill();
+    }
+  }
+
+  // Sorts the rows still in memory once every row was added, so merging only has to read
+  void finish() {
+    sortBuffer();
+  }
+
+  // Merges the added rows with rows that are already sorted, rows with equal values keep the order they
+  // were given in and the already sorted rows come first. Called after finish
+  Iterator<Hashtable<String, Object>> merge(Iterator<Hashtable<String, Object>> sortedRows) {
+    List<Iterator<Hashtable<String, Object>>> sources = new ArrayList<>();
+    sources.add(sortedRows);
+    for (int i = 0; i < runs.size(); i++) {
+      sources.add(new RunIterator(runs.get(i), runLengths.get(i)));
+    }
+    sources.add(buffer.iterator());
+    return new MergeIterator(sources);
+  }
+
+  // Deletes the run files
+  void close() {
+    for (File run : runs) {
+      run.delete();
+    }
+    runs.clear();
+  }
+
+  // Private methods
+  private void sortBuffer() {
+    // The sort is stable, so rows with equal values stay in insertion order
+    buffer.sort((a, b) -> ((Comparable) a.get(column)).compareTo(b.get(column)));
+  }
+
+  private void spill() throws DBAppException {
+    sortBuffer();
+    try {
+      File run = File.createTempFile("run", ".tmp", directory);
+      runs.add(run);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536))) {
+        for (Hashtable<String, Object> row : buffer) {
+          WriteAheadLog.writeRow(out, row);
+        }
+      }
+      runLengths.add(buffer.size());
+      buffer.clear();
+    } catch (IOException e) {
+      throw new DBAppException("Could not write sorted run: " + e.getMessage());
+    }
+  }
+
+  private static class RunIterator implements Iterator<Hashtable<String, Object>> {
+    private final File run;
+    private DataInputStream in;
+    private int remaining;
+
+    RunIterator(File run, int length) {
+      this.run = run;
+      remaining = length;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public Hashtable<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+        }
+        Hashtable<String, Object> row = WriteAheadLog.readRow(in);
+        if (--remaining == 0) {
+          in.close();
+        }
+        return row;
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not read sorted run: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private class MergeIterator implements Iterator<Hashtable<String, Object>> {
+    private final List<Iterator<Hashtable<String, Object>>> sources;
+    // Head row of every source that is not exhausted, ordered by value and then by source
+    private final PriorityQueue<Object[]> heads;
+
+    MergeIterator(List<Iterator<Hashtable<String, Object>>> sources) {
+      this.sources = sources;
+      heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+        int comparison = ((Comparable) ((Hashtable) a[1]).get(column)).compareTo(((Hashtable) b[1]).get(column));
+        return comparison != 0 ? comparison : Integer.compare((Integer) a[0], (Integer) b[0]);
+      });
+      for (int i = 0; i < sources.size(); i++) {
+        advance(i);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public Hashtable<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Object[] head = heads.poll();
+      advance((Integer) head[0]);
+      return (Hashtable<String, Object>) head[1];
+    }
+
+    private void advance(int source) {
+      if (sources.get(source).hasNext()) {
+        heads.add(new Object[]{source, sources.get(source).next()});
+      }
+    }
+  }
+}
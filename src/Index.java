@@ -1,227 +1,248 @@
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeSet;
 
 public class Index<T extends Comparable<T>> implements Serializable {
+  private static final long serialVersionUID = 8073463560174521982L;
   private String colName;
   private ArrayList<String> pages;
   private String path;
+  // Positional page sizes of indices saved before table pages had ids
   private ArrayList<Integer> sizes;
-
-  Index(String colName, String path) {
+  // Number of rows in every table page, keyed by page id
+  private HashMap<Integer, Integer> pageSizes;
+  // Smallest value of every index page, in the same order as pages
+  private volatile ArrayList<T> minValues;
+  private long lastPageName;
+  private IndexCodec codec;
+
+  Index(String colName, String path, IndexCodec codec) {
     this.colName = colName;
     this.path = path;
+    this.codec = codec;
     pages = new ArrayList<>();
-    sizes = new ArrayList<>();
-  }
-
-  void insertPage(T[] values, int pageNumber) throws DBAppException {
-    // Update page sizes
-    sizes.add(pageNumber, values.length);
-    // Save values into a set
-    HashSet<T> set = new HashSet<>(Arrays.asList(values));
-    // Add
-    for (String pageName : pages) {
-      IndexPage<T> loadedPage = IndexPage.loadPage(new File(pageName));
-      loadedPage.addPage(values);
-      for (T obj : loadedPage.getValues()) {
-        set.remove(obj);
-      }
-    }
-    for (T obj : set) {
-      insertNewValue(obj, values, pageNumber);
-    }
+    pageSizes = new HashMap<>();
+    minValues = new ArrayList<>();
   }
 
-  private void insertNewValue(T obj, T[] values, int pageNumber) throws DBAppException {
-    // Create new map based on the current page value
-    int[] sizesArr = new int[sizes.size()];
-    for(int i=0; i<sizes.size(); i++) {
-      sizesArr[i] = sizes.get(i);
-    }
-    Bitmap<T> newBitmap = new Bitmap<>(obj, pageNumber, values, sizesArr);
-    // Loop through the pages and add the new map
-    for (String fileName : pages) {
-      IndexPage<T> loadedPage = IndexPage.loadPage(new File(fileName));
-      newBitmap = loadedPage.insertValue(newBitmap);
-      if (newBitmap == null) {
-        break;
+  // Index on the same column without any values, its page files don't collide with the pages of this index
+  Index<T> emptyCopy() {
+    Index<T> copy = new Index<>(colName, path, getCodec());
+    copy.lastPageName = lastPageName;
+    return copy;
+  }
+
+  // Deletes the page files of an index that was replaced
+  void drop() throws DBAppException {
+    for (String page : pages) {
+      File pageFile = new File(page);
+      BufferPool.discard(pageFile);
+      if (pageFile.exists() && !pageFile.delete()) {
+        throw new DBAppException("Could not delete index page file");
       }
     }
-    if (newBitmap != null) {
-      // Create a new index page to add the value
-      String fileName = path+new Date().getTime();
-      IndexPage<T> newPage = IndexPage.createPage(new File(fileName));
-      pages.add(fileName);
-      newPage.insertValue(newBitmap);
-    }
   }
 
-  void deletePage(int pageNumber) throws DBAppException {
-    // Update page sizes
-    sizes.remove(pageNumber);
-    for (int i = 0; i < pages.size(); i++) {
-      String pageName = pages.get(i);
-      IndexPage loadedPage = IndexPage.loadPage(new File(pageName));
-      loadedPage.deletePage(pageNumber);
-      if (loadedPage.isEmpty()) {
-        pages.remove(i--);
+  // Writes the pages of an empty index from bitmaps sorted by value, the pages are filled completely
+  void fill(SortedMap<T, CompressedBitmap> bitmaps, HashMap<Integer, Integer> pageSizes) throws DBAppException {
+    this.pageSizes = pageSizes;
+    IndexPage<T> page = null;
+    Iterator<Map.Entry<T, CompressedBitmap>> entries = bitmaps.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<T, CompressedBitmap> entry = entries.next();
+      if (page == null) {
+        page = createPage();
+      }
+      page.append(new Bitmap<>(entry.getKey(), entry.getValue()));
+      if (page.isFull() || !entries.hasNext()) {
+        // Pages are written in value order and bypass the buffer pool
+        page.writeToDisk(page.getImage(), true);
+        pages.add(page.getPageFile().getPath());
+        minValues.add(page.peek());
+        page = null;
       }
     }
   }
 
-  void updatePage(int pageNumber, T[] values) throws DBAppException {
-    sizes.remove(pageNumber);
-    sizes.add(pageNumber, values.length);
-    HashSet<T> uniqueValues = new HashSet<>(Arrays.asList(values));
-    for (int i=0; i<pages.size(); i++) {
-      String pageName = pages.get(i);
-      IndexPage<T> loadedPage = IndexPage.loadPage(new File(pageName));
-      loadedPage.updatePage(pageNumber, values);
-      for (T obj : values) {
-        if (loadedPage.contains(obj)) {
-          uniqueValues.remove(obj);
+  void insertPage(int pageId, T[] values) throws DBAppException {
+    updatePage(pageId, Arrays.copyOf(values, 0), values);
+  }
+
+  void deletePage(int pageId, T[] oldValues) throws DBAppException {
+    updatePage(pageId, oldValues, Arrays.copyOf(oldValues, 0));
+    pageSizes.remove(pageId);
+  }
+
+  // Only the index pages holding the old or new values of the table page are loaded
+  void updatePage(int pageId, T[] oldValues, T[] values) throws DBAppException {
+    ensureMinValues();
+    pageSizes.put(pageId, values.length);
+    TreeSet<T> affected = new TreeSet<>(Arrays.asList(oldValues));
+    affected.addAll(Arrays.asList(values));
+    for (T value : affected) {
+      long[] words = CompressedBitmap.matches(value, values);
+      int pageNum = findPage(value);
+      if (pageNum == pages.size()) {
+        // The index is empty, create its first page
+        if (words.length > 0) {
+          IndexPage<T> newPage = createPage();
+          newPage.insertValue(new Bitmap<>(value, pageId, values));
+          pages.add(newPage.getPageFile().getPath());
+          minValues.add(value);
         }
+        continue;
       }
-      if(loadedPage.isEmpty()) {
-        pages.remove(i--);
+      IndexPage<T> loadedPage = BufferPool.getIndexPage(new File(pages.get(pageNum)));
+      if (!loadedPage.setBits(value, pageId, words)) {
+        if (words.length == 0) {
+          continue;
+        }
+        loadedPage.insertValue(new Bitmap<>(value, pageId, values));
+        if (loadedPage.isOverflowing()) {
+          // Move the upper half of the values into a new index page
+          IndexPage<T> newPage = loadedPage.split(newPageFile());
+          pages.add(pageNum + 1, newPage.getPageFile().getPath());
+          minValues.add(pageNum + 1, newPage.peek());
+        }
+      }
+      if (loadedPage.isEmpty()) {
+        pages.remove(pageNum);
+        minValues.remove(pageNum);
+      } else {
+        minValues.set(pageNum, loadedPage.peek());
       }
-    }
-    // Add new values
-    for (T newValue : uniqueValues) {
-      insertNewValue(newValue, values, pageNumber);
     }
   }
 
-  boolean[][] query(SQLTerm term) throws DBAppException {
-    if(pages.size() == 0){
-      return new boolean[0][0];
-    }
+  CompressedBitmap query(SQLTerm term) throws DBAppException {
+    ensureMinValues();
     String operator = term._strOperator;
     switch (operator) {
       case ("="):
         return selectEqual(term);
       case ("!="):
-        return selectNotEqual(term);
+        return invert(selectEqual(term));
       case ("<"):
-        return selectSmallerThan(term);
+        return selectSmallerThan(term, false);
       case ("<="):
-        return selectSmallerThanOrEqual(term);
+        return selectSmallerThan(term, true);
       case (">"):
-        return biggerThan(term);
+        return invert(selectSmallerThan(term, true));
       case (">="):
-        return biggerThanOrEqual(term);
+        return invert(selectSmallerThan(term, false));
     }
     throw new DBAppException("Unknown operator");
   }
 
-  private boolean[][] biggerThanOrEqual(SQLTerm term) throws DBAppException {
-    return invert(selectSmallerThan(term));
-  }
-
-  private boolean[][] biggerThan(SQLTerm term) throws DBAppException {
-    return invert(selectSmallerThanOrEqual(term));
+  // Bitmap of every row in the table
+  CompressedBitmap getUniverse() {
+    return CompressedBitmap.full(pageSizes);
   }
 
-  private boolean[][] selectSmallerThanOrEqual(SQLTerm term) throws DBAppException {
-    // Get the shape of the bitmap
-    IndexPage<T> loadedPage = IndexPage.loadPage(new File(pages.get(0)));
-    boolean[][] result = loadedPage.getEmptyMap();
-    // loop over pages
-    for (String page : pages) {
-      // load page
-      loadedPage = IndexPage.loadPage(new File(page));
-      // Check if the value is less than the minimum of the page
-      if (loadedPage.peek().compareTo((T) term._objValue) > 0) {
-        return result;
+  private CompressedBitmap selectSmallerThan(SQLTerm term, boolean orEqual) throws DBAppException {
+    CompressedBitmap result = new CompressedBitmap();
+    // Pages after the page of the value only hold bigger values
+    int lastPage = Math.min(findPage((T) term._objValue), pages.size() - 1);
+    for (int pageNum = 0; pageNum <= lastPage; pageNum++) {
+      IndexPage<T> loadedPage = BufferPool.getIndexPage(new File(pages.get(pageNum)));
+      if (orEqual) {
+        loadedPage.addLessThanOrEqual((T) term._objValue, result);
+      } else {
+        loadedPage.addLessThan((T) term._objValue, result);
       }
-      // Check if the current page contains the value
-      boolean[][] tmp = loadedPage.getLessThanOrEqual((T) term._objValue);
-      result = intersect(result, tmp);
     }
-    // Making sure all pages were initialized properly
     return result;
   }
 
-
-  private boolean[][] selectSmallerThan(SQLTerm term) throws DBAppException {
-    // Get the shape of the bitmap
-    IndexPage<T> loadedPage = IndexPage.loadPage(new File(pages.get(0)));
-    boolean[][] result = loadedPage.getEmptyMap();
-    // loop over pages
-    for (String page : pages) {
-      // load page
-      loadedPage = IndexPage.loadPage(new File(page));
-      // Check if the value is less than the minimum of the page
-      if (loadedPage.peek().compareTo((T) term._objValue) > 0) {
-        return result;
+  private CompressedBitmap selectEqual(SQLTerm term) throws DBAppException {
+    int pageNum = findPage((T) term._objValue);
+    if (pageNum < pages.size()) {
+      // Check if the page of the value contains it
+      IndexPage<T> loadedPage = BufferPool.getIndexPage(new File(pages.get(pageNum)));
+      if (loadedPage.contains((T) term._objValue)) {
+        return loadedPage.get((T) term._objValue);
       }
-      // Check if the current page contains the value
-      boolean[][] tmp = loadedPage.getLessThan((T) term._objValue);
-      result = intersect(result, tmp);
     }
-    // Making sure all pages were initialized properly
-    return result;
+    return new CompressedBitmap();
   }
 
-  private boolean[][] selectNotEqual(SQLTerm term) throws DBAppException {
-    // Reverse the result from select equal
-    boolean[][] result = selectEqual(term);
-    for (int i = 0; i < result.length; i++) {
-      for (int j = 0; j < result[i].length; j++) {
-        result[i][j] = !result[i][j];
-      }
-    }
-    return result;
+  private CompressedBitmap invert(CompressedBitmap bitmap) {
+    bitmap.not(getUniverse());
+    return bitmap;
   }
 
-  private boolean[][] selectEqual(SQLTerm term) throws DBAppException {
-    // Get the shape of the bitmap
-    IndexPage<T> loadedPage = IndexPage.loadPage(new File(pages.get(0)));
-    boolean[][] result = loadedPage.getEmptyMap();
-    // loop over pages
-    for (String page : pages) {
-      // load page
-      loadedPage = IndexPage.loadPage(new File(page));
-      // Check if the value is less than the minimum of the page
-      if (loadedPage.peek().compareTo((T) term._objValue) > 0) {
-        return result;
-      }
-      // Check if the current page contains the value
-      if (loadedPage.contains((T) term._objValue)) {
-        return loadedPage.get((T) term._objValue);
+  // Returns the last index page with a smallest value not bigger than the value
+  private int findPage(T value) {
+    if (pages.isEmpty()) {
+      return 0;
+    }
+    int low = 0;
+    int high = minValues.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (minValues.get(mid).compareTo(value) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
       }
     }
-    // Making sure all pages were initialized properly
-    return result;
+    return Math.max(0, low - 1);
   }
 
-  private boolean[][] intersect(boolean[][] arr1, boolean[][] arr2) {
-    boolean[][] result = new boolean[arr1.length][];
-    for (int i = 0; i < arr1.length; i++) {
-      result[i] = new boolean[arr1[i].length];
-      for (int j = 0; j < result[i].length; j++) {
-        result[i][j] = arr1[i][j] | arr2[i][j];
+  private void ensureMinValues() throws DBAppException {
+    // Build the fence values of indices saved without them
+    if (minValues == null) {
+      // Concurrent queries may build them at the same time, the list is only published once complete
+      ArrayList<T> values = new ArrayList<>(pages.size());
+      for (String page : pages) {
+        IndexPage<T> loadedPage = BufferPool.getIndexPage(new File(page));
+        values.add(loadedPage.peek());
       }
+      minValues = values;
     }
-    return result;
   }
 
-  private boolean[][] invert(boolean[][] arr1) {
-    boolean[][] result = new boolean[arr1.length][];
-    for (int i = 0; i < arr1.length; i++) {
-      result[i] = new boolean[arr1[i].length];
-      for (int j = 0; j < result[i].length; j++) {
-        result[i][j] = !arr1[i][j];
-      }
-    }
-    return result;
+  private IndexPage<T> createPage() throws DBAppException {
+    return IndexPage.createPage(newPageFile(), getCodec());
+  }
+
+  private File newPageFile() {
+    // Page names are increasing timestamps, so pages created in the same millisecond don't collide
+    lastPageName = Math.max(lastPageName + 1, new Date().getTime());
+    return new File(path + lastPageName);
+  }
+
+  IndexCodec getCodec() {
+    // Indices created before codecs were compressed
+    return codec == null ? IndexCodec.FAST : codec;
+  }
+
+  int getPageCount() {
+    return pages.size();
   }
 
   public String getColName() {
     return colName;
   }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (pageSizes == null) {
+      // Table pages of older tables got their position as their id
+      pageSizes = new HashMap<>();
+      for (int i = 0; i < sizes.size(); i++) {
+        pageSizes.put(i, sizes.get(i));
+      }
+      sizes = null;
+    }
+  }
 }
@@ -0,0 +1,48 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Collects the bitmaps of a new index from the table pages, then writes every index page in one pass.
+// Pages have to be added in ascending page id order so each bitmap only grows at its end
+class IndexBuilder<T extends Comparable<T>> {
+  private final TreeMap<T, CompressedBitmap> bitmaps;
+  private final HashMap<Integer, Integer> pageSizes;
+
+  // Rows of one table page grouped by value
+  static class PageValues<T> {
+    final int size;
+    final HashMap<T, long[]> words;
+
+    private PageValues(int size, HashMap<T, long[]> words) {
+      this.size = size;
+      this.words = words;
+    }
+  }
+
+  IndexBuilder() {
+    bitmaps = new TreeMap<>();
+    pageSizes = new HashMap<>();
+  }
+
+  // Groups the rows of a page by value, does not touch the builder so it can run on any thread
+  static <T> PageValues<T> group(T[] values) {
+    HashMap<T, long[]> words = new HashMap<>();
+    for (int row = 0; row < values.length; row++) {
+      words.computeIfAbsent(values[row], value -> new long[CompressedBitmap.wordCount(values.length)])[row >>> 6]
+          |= 1L << row;
+    }
+    return new PageValues<>(values.length, words);
+  }
+
+  void addPage(int pageId, PageValues<T> values) {
+    pageSizes.put(pageId, values.size);
+    for (Map.Entry<T, long[]> entry : values.words.entrySet()) {
+      bitmaps.computeIfAbsent(entry.getKey(), value -> new CompressedBitmap()).setPage(pageId, entry.getValue());
+    }
+  }
+
+  void build(Index<T> index) throws DBAppException {
+    index.fill(bitmaps, pageSizes);
+    bitmaps.clear();
+  }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Compression used for the pages of an index
+enum IndexCodec {
+  NONE(Deflater.NO_COMPRESSION),
+  FAST(Deflater.BEST_SPEED),
+  COMPACT(Deflater.BEST_COMPRESSION);
+
+  private final int level;
+
+  IndexCodec(int level) {
+    this.level = level;
+  }
+
+  static IndexCodec fromName(String name) throws DBAppException {
+    try {
+      return valueOf(name.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new DBAppException("Unknown index codec: " + name);
+    }
+  }
+
+  InputStream decode(InputStream in) {
+    if (this == NONE) {
+      return in;
+    }
+    return new InflaterInputStream(in, new Inflater(), 8192);
+  }
+
+  OutputStream encode(OutputStream out) {
+    if (this == NONE) {
+      return out;
+    }
+    return new DeflaterOutputStream(out, new Deflater(level), 8192) {
+      @Override
+      public void close() throws IOException {
+        // Release the native memory of the deflater
+        super.close();
+        def.end();
+      }
+    };
+  }
+}
@@ -1,234 +1,224 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
-class IndexPage<T extends Comparable<T>> implements Serializable {
+class IndexPage<T extends Comparable<T>> implements Page, Serializable {
+  private static final long serialVersionUID = 1135558947479945658L;
+  // Page header: magic followed by the codec of the page
+  private static final int MAGIC = 0x49504731;
   private ArrayList<Bitmap<T>> bitmaps;
   transient private File pageFile;
+  transient private boolean changed;
+  transient private IndexCodec codec;
+  transient private Metrics.TableMetrics metrics;
   private int pageSize;
 
 
   // Static methods
-  static IndexPage createPage(File pageFile) throws DBAppException {
+  static IndexPage createPage(File pageFile, IndexCodec codec) throws DBAppException {
     IndexPage newPage = new IndexPage();
     newPage.pageFile = pageFile;
+    newPage.codec = codec;
     newPage.pageSize = getPageSize();
     newPage.bitmaps = new ArrayList();
     return newPage;
   }
 
   static IndexPage loadPage(File pageFile) throws DBAppException {
-    File temp = null;
-    try {
-      // Create temp file for decompression
-      temp = new File(pageFile.getAbsolutePath() + ".tmp");
-      // Unzip the compressed file
-      ZipInputStream zis = new ZipInputStream(new BufferedInputStream(
-          new FileInputStream(pageFile)));
-      BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(temp));
-      // Get the entry from the zip
-      zis.getNextEntry();
-      // extract the entry into the temp file
-      while (zis.available() != 0) {
-        bos.write(zis.read());
+    try (FileChannel channel = FileChannel.open(pageFile.toPath(), StandardOpenOption.READ)) {
+      // Read the whole page with one call and decode it from memory
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new DBAppException("Could not read index page: unexpected end of file");
+        }
       }
-      bos.flush();
-      bos.close();
-      BufferedInputStream bis = new BufferedInputStream(new FileInputStream(temp));
-      // Read the object from the temp file
-      ObjectInputStream objectInputStream = new ObjectInputStream(bis);
-      IndexPage loadedPage = (IndexPage) objectInputStream.readObject();
-      loadedPage.pageFile = pageFile;
-      bis.close();
-      objectInputStream.close();
-      zis.close();
-      if (!temp.delete()) {
-        throw new DBAppException("Could not delete temp file");
+      byte[] bytes = buffer.array();
+      InputStream in = new ByteArrayInputStream(bytes);
+      IndexCodec codec;
+      if (bytes.length >= 5 && buffer.getInt(0) == MAGIC) {
+        codec = IndexCodec.values()[bytes[4]];
+        in.skip(5);
+        in = codec.decode(in);
+      } else {
+        // Pages written before codecs are a zip archive with a single entry
+        codec = IndexCodec.FAST;
+        ZipInputStream zis = new ZipInputStream(in);
+        zis.getNextEntry();
+        in = zis;
       }
-      return loadedPage;
-    } catch (IOException | ClassNotFoundException e) {
-      if (!temp.delete()) {
-
-        throw new DBAppException("Could not delete temp file");
+      try (ObjectInputStream objectInputStream = new ObjectInputStream(in)) {
+        IndexPage loadedPage = (IndexPage) objectInputStream.readObject();
+        loadedPage.pageFile = pageFile;
+        loadedPage.codec = codec;
+        loadedPage.getMetrics().indexPageReads.increment();
+        loadedPage.getMetrics().indexPageBytesRead.add(bytes.length);
+        return loadedPage;
       }
-
-      e.printStackTrace();
+    } catch (IOException | ClassNotFoundException e) {
       throw new DBAppException("Could not read file from disk: " + e.getMessage());
     }
   }
 
-  void updatePage(int pageNumber, T[] toBitMap) throws DBAppException {
-    for (int i = 0; i < bitmaps.size(); i++) {
-      Bitmap<T> bitmap = bitmaps.get(i);
-      ArrayList<Boolean> map = new ArrayList<>();
-      for (T obj : toBitMap) {
-        map.add(bitmap.value.compareTo(obj) == 0);
-      }
-      bitmap.bitmap.remove(pageNumber);
-      bitmap.bitmap.add(pageNumber, map);
-      if (bitmap.isEmpty()) {
-        bitmaps.remove(i);
-        i = Math.max(i - 1, 0);
-      }
-    }
-    writeToDisk();
-  }
-
-  private void writeToDisk() throws DBAppException {
+  public byte[] getImage() throws DBAppException {
     if (isEmpty()) {
-      if (!pageFile.delete()) {
-        throw new DBAppException("Could not delete index page file");
-      }
-      return;
+      return null;
     }
     try {
-      ZipOutputStream zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(pageFile)));
-      zipStream.putNextEntry(new ZipEntry("ENTRY"));
-      ObjectOutputStream objectOutputStream = new ObjectOutputStream(zipStream);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+      // Write the header uncompressed, the codec applies to the page object
+      bytes.write(ByteBuffer.allocate(5).putInt(MAGIC).put((byte) codec.ordinal()).array());
+      ObjectOutputStream objectOutputStream = new ObjectOutputStream(codec.encode(bytes));
       objectOutputStream.writeObject(this);
-      objectOutputStream.flush();
       objectOutputStream.close();
+      return bytes.toByteArray();
     } catch (IOException e) {
       throw new DBAppException("Could not write index file: " + e.getMessage());
     }
   }
 
-  Bitmap<T> insertValue(Bitmap<T> bitmap) throws DBAppException {
-    int index = 0;
-    for (; index < bitmaps.size(); index++) {
-      Bitmap<T> map = bitmaps.get(index);
-      if (map.compareTo(bitmap) >= 0) {
-        // If the current value is bigger than the value trying to insert
-        bitmaps.add(index, bitmap);
-        if (bitmaps.size() <= pageSize) {
-          writeToDisk();
-          return null;
-        } else {
-          Bitmap<T> output = bitmaps.remove(pageSize - 1);
-          writeToDisk();
-          return output;
-        }
-      }
-    }
-    if (bitmaps.size() < pageSize) {
-      bitmaps.add(bitmap);
-      writeToDisk();
-      return null;
+  public void writeToDisk(byte[] image, boolean sync) throws DBAppException {
+    Page.writeImage(pageFile, image, sync);
+    changed = false;
+    if (image != null) {
+      getMetrics().indexPageWrites.increment();
+      getMetrics().indexPageBytesWritten.add(image.length);
     }
-    return bitmap;
   }
 
-  private static int getPageSize() throws DBAppException {
-    return MetaData.getIndexPageSize();
+  public void writeToDisk() throws DBAppException {
+    writeToDisk(getImage(), false);
   }
 
-  T peek() {
-    if (bitmaps.isEmpty()) {
-      return null;
-    }
-    return bitmaps.get(0).value;
+  void insertValue(Bitmap<T> bitmap) throws DBAppException {
+    int index = find(bitmap.value);
+    bitmaps.add(index < 0 ? -index - 1 : index, bitmap);
+    markChanged();
   }
 
-  boolean contains(T value) {
-    for (Bitmap<T> bitmap : bitmaps) {
-      if (bitmap.value.compareTo(value) == 0) {
-        return true;
-      }
+  // Sets the bits of the value in a table page, returns false if the value is not in this page
+  boolean setBits(T value, int pageId, long[] words) throws DBAppException {
+    int index = find(value);
+    if (index < 0) {
+      return false;
+    }
+    Bitmap<T> bitmap = bitmaps.get(index);
+    bitmap.bits.setPage(pageId, words);
+    if (bitmap.isEmpty()) {
+      bitmaps.remove(index);
     }
-    return false;
+    markChanged();
+    return true;
   }
 
-  boolean[][] get(T objValue) throws DBAppException {
-    for (Bitmap<T> bitmap : bitmaps) {
-      if (bitmap.value.compareTo(objValue) == 0) {
-        return bitmap.toMap();
-      }
-    }
-    throw new DBAppException("Value not found");
+  // Adds a bitmap bigger than all values of a page that is being built outside the buffer pool
+  void append(Bitmap<T> bitmap) {
+    bitmaps.add(bitmap);
   }
 
-  boolean[][] getEmptyMap() throws DBAppException {
-    boolean[][] tmp = get(peek());
-    boolean[][] result = new boolean[tmp.length][];
-    for (int i = 0; i < result.length; i++) {
-      result[i] = new boolean[tmp[i].length];
-    }
-    return result;
+  boolean isFull() {
+    return bitmaps.size() >= pageSize;
   }
 
-  int[] getShape() throws DBAppException {
-    boolean[][] tmp = get(peek());
-    int[] result = new int[tmp.length];
-    for (int i = 0; i < result.length; i++) {
-      result[i] = tmp[i].length;
-    }
-    return result;
+  boolean isOverflowing() {
+    return bitmaps.size() > pageSize;
   }
 
-  boolean[][] getLessThan(T objValue) throws DBAppException {
-    boolean[][] resultSet = getEmptyMap();
-    for (Bitmap<T> bitmap : bitmaps) {
-      if (bitmap.value.compareTo(objValue) >= 0) {
-        return resultSet;
+  // Moves the upper half of the values into a new page
+  IndexPage<T> split(File newPageFile) throws DBAppException {
+    IndexPage<T> newPage = createPage(newPageFile, codec);
+    int middle = bitmaps.size() / 2;
+    newPage.bitmaps.addAll(bitmaps.subList(middle, bitmaps.size()));
+    bitmaps.subList(middle, bitmaps.size()).clear();
+    newPage.markChanged();
+    markChanged();
+    return newPage;
+  }
+
+  private int find(T value) {
+    int low = 0;
+    int high = bitmaps.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = bitmaps.get(mid).value.compareTo(value);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
       }
-      intersect(resultSet, bitmap.toMap());
     }
-    return resultSet;
+    return -(low + 1);
   }
 
-  boolean[][] getLessThanOrEqual(T objValue) throws DBAppException {
-    boolean[][] resultSet = getEmptyMap();
-    for (Bitmap<T> bitmap : bitmaps) {
-      if (bitmap.value.compareTo(objValue) > 0) {
-        return resultSet;
-      }
-      intersect(resultSet, bitmap.toMap());
+  private void markChanged() throws DBAppException {
+    changed = true;
+    BufferPool.markDirty(this);
+  }
+
+  public boolean isChanged() {
+    return changed;
+  }
+
+  public File getPageFile() {
+    return pageFile;
+  }
+
+  public Metrics.TableMetrics getMetrics() {
+    if (metrics == null) {
+      // Index pages are stored in <table>/indices/<column>/
+      metrics = Metrics.forTable(pageFile.getAbsoluteFile().getParentFile().getParentFile().getParentFile().getName());
     }
-    return resultSet;
+    return metrics;
   }
 
-  private void intersect(boolean[][] b1, boolean[][] b2) {
-    for (int i = 0; i < b1.length; i++) {
-      for (int j = 0; j < b1[i].length; j++) {
-        b1[i][j] = b1[i][j] | b2[i][j];
-      }
+  private static int getPageSize() throws DBAppException {
+    return MetaData.getIndexPageSize();
+  }
+
+  T peek() {
+    if (bitmaps.isEmpty()) {
+      return null;
     }
+    return bitmaps.get(0).value;
   }
 
-  void deletePage(int pageNumber) throws DBAppException {
-    for (int i = 0; i < bitmaps.size(); i++) {
-      Bitmap<T> bitmap = bitmaps.get(i);
-      bitmap.bitmap.remove(pageNumber);
-      if (bitmap.isEmpty()) {
-        bitmaps.remove(i--);
-      }
+  boolean contains(T value) {
+    return find(value) >= 0;
+  }
+
+  CompressedBitmap get(T objValue) throws DBAppException {
+    int index = find(objValue);
+    if (index < 0) {
+      throw new DBAppException("Value not found");
     }
-    writeToDisk();
+    return bitmaps.get(index).bits.copy();
   }
 
-  void addPage(T[] toBitMap) throws DBAppException {
+  // Adds the rows of all values smaller than the given value to the result
+  void addLessThan(T objValue, CompressedBitmap result) {
     for (Bitmap<T> bitmap : bitmaps) {
-      ArrayList<Boolean> map = new ArrayList<>();
-      for (T obj : toBitMap) {
-        map.add(bitmap.value.compareTo(obj) == 0);
+      if (bitmap.value.compareTo(objValue) >= 0) {
+        return;
       }
-      bitmap.bitmap.add(map);
+      result.or(bitmap.bits);
     }
-    writeToDisk();
   }
 
-  Iterable<T> getValues() {
-    HashSet<T> values = new HashSet<>();
-    for (Bitmap<T> bmap : bitmaps) {
-      values.add(bmap.value);
+  void addLessThanOrEqual(T objValue, CompressedBitmap result) {
+    for (Bitmap<T> bitmap : bitmaps) {
+      if (bitmap.value.compareTo(objValue) > 0) {
+        return;
+      }
+      result.or(bitmap.bits);
     }
-    return values;
   }
 
-  boolean isEmpty() {
+  public boolean isEmpty() {
     return bitmaps.isEmpty();
   }
 }
@@ -0,0 +1,87 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear histogram of latencies in nanoseconds. Every power of two is split in 32 buckets, so recorded
+// values keep about 3% precision over the whole range and recording is a few atomic increments
+class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder total;
+  private final LongAccumulator max;
+
+  LatencyHistogram() {
+    counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+    count = new LongAdder();
+    total = new LongAdder();
+    max = new LongAccumulator(Math::max, 0);
+  }
+
+  // Records the time since the start, taken from System.nanoTime
+  void record(long start) {
+    long latency = Math.max(0, System.nanoTime() - start);
+    counts.incrementAndGet(bucket(latency));
+    count.increment();
+    total.add(latency);
+    max.accumulate(latency);
+  }
+
+  // Count, mean, max and percentiles, in nanoseconds
+  Map<String, Long> getSummary() {
+    long[] snapshot = new long[counts.length()];
+    long recorded = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+      recorded += snapshot[i];
+    }
+    Map<String, Long> summary = new LinkedHashMap<>();
+    summary.put("count", recorded);
+    summary.put("mean", recorded == 0 ? 0 : total.sum() / Math.max(1, count.sum()));
+    summary.put("max", max.get());
+    summary.put("p50", percentile(snapshot, recorded, 0.5));
+    summary.put("p90", percentile(snapshot, recorded, 0.9));
+    summary.put("p99", percentile(snapshot, recorded, 0.99));
+    summary.put("p999", percentile(snapshot, recorded, 0.999));
+    return summary;
+  }
+
+  // Private methods
+  private static int bucket(long value) {
+    int magnitude = 63 - Long.numberOfLeadingZeros(value | 1);
+    if (magnitude < SUB_BUCKET_BITS) {
+      // Small values are counted exactly
+      return (int) value;
+    }
+    int shift = magnitude - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  // Middle of the values counted in the bucket
+  private static long valueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) >>> 1);
+  }
+
+  private static long percentile(long[] snapshot, long recorded, double fraction) {
+    if (recorded == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * recorded));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return valueOf(i);
+      }
+    }
+    return valueOf(snapshot.length - 1);
+  }
+}
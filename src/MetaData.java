@@ -1,19 +1,45 @@
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Hashtable;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 class MetaData {
   private static final String path = "data/meta.csv";
-  private static MetaData meta;
+  private static volatile MetaData meta;
+  // Taken exclusively by DDL, table locks are never requested while holding it
+  private static final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+  // Writes the pages of the other tables once a commit finds the buffer pool mostly dirty
+  private static final ExecutorService flusher = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "buffer-pool-flush");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final AtomicBoolean flushPending = new AtomicBoolean();
+  // Settings that replace those of the config file, they apply from the next load of the metadata
+  private static final Properties overrides = new Properties();
   private Hashtable<String, HashSet<Column>> tableMeta;
+  // Live tables and resolved schemas, only dropped by DDL
+  private Hashtable<String, Table> tables;
+  private Hashtable<String, TableSchema> schemas;
   private Properties props;
 
   static boolean containsTable(String tableName) throws DBAppException {
     if (meta == null) {
       loadMetaData();
     }
-    return meta.tableMeta.containsKey(tableName);
+    catalogLock.readLock().lock();
+    try {
+      return meta.tableMeta.containsKey(tableName);
+    } finally {
+      catalogLock.readLock().unlock();
+    }
   }
 
   public static void validateQuery(SQLTerm[] terms, String[] operators) throws DBAppException {
@@ -27,24 +53,16 @@ class MetaData {
     if (!meta.tableMeta.containsKey(tableName)) {
       throw new DBAppException("The table: " + tableName + " Does not exist");
     }
-    HashSet<Column> columns = meta.tableMeta.get(tableName);
+    TableSchema schema = getSchema(tableName);
     for (SQLTerm term : terms) {
       if (!term._strTableName.equals(tableName)) {
         throw new DBAppException("Inconsistent table names in query");
       }
-      Column column = null;
-      for (Column c : columns) {
-        if (c.getName().equals(term._strColumnName)) {
-          column = c;
-          break;
-        }
-      }
-      if (column == null) {
+      int column = schema.indexOf(term._strColumnName);
+      if (column < 0) {
         throw new DBAppException("Column: " + term._strColumnName + " Does not exist in the queried table");
       }
-      try {
-        Class.forName(column.getType()).cast(term._objValue);
-      } catch (ClassNotFoundException e) {
+      if (!schema.getType(column).isInstance(term._objValue)) {
         throw new DBAppException("The value is not consistent with the column data type");
       }
       switch (term._strOperator) {
@@ -89,12 +107,134 @@ class MetaData {
     }
   }
 
+  static Set<String> getTableNames() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    catalogLock.readLock().lock();
+    try {
+      return new HashSet<>(meta.tableMeta.keySet());
+    } finally {
+      catalogLock.readLock().unlock();
+    }
+  }
+
   static Table getTable(String tableName) throws DBAppException {
     if (meta == null) {
       loadMetaData();
     }
-    String tableDirectory = "data/" + tableName + "/";
-    return Table.loadTable(tableName, tableDirectory, meta.tableMeta.get(tableName));
+    catalogLock.readLock().lock();
+    try {
+      Table table = meta.tables.get(tableName);
+      if (table != null) {
+        return table;
+      }
+    } finally {
+      catalogLock.readLock().unlock();
+    }
+    // The first use of a table loads and recovers it while other threads wait
+    catalogLock.writeLock().lock();
+    try {
+      Table table = meta.tables.get(tableName);
+      if (table == null) {
+        String tableDirectory = "data/" + tableName + "/";
+        WriteAheadLog.recoverCheckpoint(tableDirectory, tableName);
+        table = Table.loadTable(tableName, tableDirectory, meta.tableMeta.get(tableName));
+        try {
+          table.recover();
+        } catch (DBAppException | RuntimeException e) {
+          // Only recovered tables are cached, the log is kept for the next attempt
+          table.abandon();
+          throw e;
+        }
+        meta.tables.put(tableName, table);
+      }
+      return table;
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
+  }
+
+  static TableSchema getSchema(String tableName) throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    catalogLock.readLock().lock();
+    try {
+      TableSchema schema = meta.schemas.get(tableName);
+      if (schema == null) {
+        // Concurrent callers may both resolve the schema, either copy is valid
+        schema = new TableSchema(meta.tableMeta.get(tableName));
+        meta.schemas.put(tableName, schema);
+      }
+      return schema;
+    } finally {
+      catalogLock.readLock().unlock();
+    }
+  }
+
+  static void checkpoint() throws DBAppException {
+    // Every table takes its own lock, so no catalog lock is held meanwhile
+    for (Table table : getLoadedTables()) {
+      table.checkpoint();
+    }
+  }
+
+  // Checkpoints every table on the flush thread, tables in the middle of a change are skipped
+  static void flushInBackground() {
+    if (!flushPending.compareAndSet(false, true)) {
+      return;
+    }
+    flusher.execute(() -> {
+      flushPending.set(false);
+      for (Table table : getLoadedTables()) {
+        try {
+          table.tryCheckpoint();
+        } catch (DBAppException e) {
+          // The pages stay dirty, the next checkpoint of the table writes them or reports the failure
+        }
+      }
+    });
+  }
+
+  static synchronized void overrideProperty(String name, String value) {
+    overrides.setProperty(name, value);
+  }
+
+  // Forgets every loaded table and cached page without writing them, like a restart of the process
+  static synchronized void reset() throws DBAppException {
+    if (meta != null) {
+      for (Table table : meta.tables.values()) {
+        table.close();
+      }
+      meta = null;
+    }
+    BufferPool.reset();
+    StringDictionary.reset();
+  }
+
+  // Checkpoints the tables no thread is changing until the buffer pool is back within its capacity
+  static void checkpointIdleTables() throws DBAppException {
+    for (Table table : getLoadedTables()) {
+      if (!BufferPool.isOverflowing()) {
+        return;
+      }
+      table.tryCheckpoint();
+    }
+  }
+
+  static void createBitmapIndex(String tableName, String colName, IndexCodec codec) throws DBAppException {
+    Table table = getTable(tableName);
+    // Only the table is locked while the index is built
+    table.createBitmapIndex(colName, codec);
+    catalogLock.writeLock().lock();
+    try {
+      // The column is now marked as indexed
+      meta.schemas.remove(tableName);
+      meta.writeToDisk();
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
   }
 
   static void createTable(String tableName, String key, Hashtable<String, String> colData) throws DBAppException {
@@ -102,8 +242,18 @@ class MetaData {
     if (meta == null) {
       loadMetaData();
     }
+    catalogLock.writeLock().lock();
+    try {
+      addTable(tableName, key, colData);
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
+  }
+
+  private static void addTable(String tableName, String key, Hashtable<String, String> colData)
+      throws DBAppException {
     // Check if there is a table with the same name
-    if (containsTable(tableName)) {
+    if (meta.tableMeta.containsKey(tableName)) {
       throw new DBAppException("Table already exists with the same name: " + tableName);
     }
     // Check if the column data types are valid
@@ -126,22 +276,45 @@ class MetaData {
     Table newTable = new Table(tableName, key, colData);
     // Add tableMeta
     meta.tableMeta.put(tableName, newTable.getColSet());
+    meta.tables.put(tableName, newTable);
+    meta.schemas.remove(tableName);
     meta.writeToDisk();
   }
 
-  private static void loadMetaData() throws DBAppException {
-    meta = new MetaData();
-    meta.tableMeta = new Hashtable<>();
+  private static List<Table> getLoadedTables() {
+    MetaData loaded = meta;
+    if (loaded == null) {
+      return new ArrayList<>();
+    }
+    catalogLock.readLock().lock();
+    try {
+      return new ArrayList<>(loaded.tables.values());
+    } finally {
+      catalogLock.readLock().unlock();
+    }
+  }
+
+  private static synchronized void loadMetaData() throws DBAppException {
+    if (meta != null) {
+      return;
+    }
+    // Other threads only see the metadata once it is completely loaded
+    MetaData loaded = new MetaData();
+    loaded.tableMeta = new Hashtable<>();
+    loaded.tables = new Hashtable<>();
+    loaded.schemas = new Hashtable<>();
     File metaFile = new File(path);
     // Load properties
     try {
-      meta.props = new Properties();
-      meta.props.load(new FileInputStream("config/DBApp.properties"));
+      loaded.props = new Properties();
+      loaded.props.load(new FileInputStream("config/DBApp.properties"));
+      loaded.props.putAll(overrides);
     } catch (IOException e) {
       throw new DBAppException("Could not read config: " + e.getMessage());
     }
     // Check if a csv exists to read from
     if (!metaFile.exists()) {
+      meta = loaded;
       return;
     }
     // Read data from csv
@@ -151,14 +324,15 @@ class MetaData {
         String col = bf.readLine();
         Column loadedColumn = new Column(col);
         String tableName = loadedColumn.getTableName();
-        if (!meta.tableMeta.containsKey(tableName)) {
-          meta.tableMeta.put(tableName, new HashSet<>());
+        if (!loaded.tableMeta.containsKey(tableName)) {
+          loaded.tableMeta.put(tableName, new HashSet<>());
         }
-        meta.tableMeta.get(tableName).add(loadedColumn);
+        loaded.tableMeta.get(tableName).add(loadedColumn);
       }
     } catch (IOException e) {
       throw new DBAppException("Could not read metadata: " + e.getMessage());
     }
+    meta = loaded;
   }
 
   static int getTablePageSize() throws DBAppException {
@@ -175,44 +349,100 @@ class MetaData {
     return Integer.parseInt(meta.props.getProperty("BitmapSize"));
   }
 
+  static int getBufferPoolSize() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Integer.parseInt(meta.props.getProperty("BufferPoolSize", "256"));
+  }
+
+  static long getCheckpointLogSize() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Long.parseLong(meta.props.getProperty("CheckpointLogSize", "4194304"));
+  }
+
+  static int getBulkLoadRunSize() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Integer.parseInt(meta.props.getProperty("BulkLoadRunSize", "100000"));
+  }
+
+  // Threads shared by all parallel scans
+  static int getScanThreads() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    String threads = meta.props.getProperty("ScanThreads");
+    return threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+  }
+
+  // Degree of parallelism of queries that don't choose their own
+  static int getScanParallelism() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Integer.parseInt(meta.props.getProperty("ScanParallelism", "1"));
+  }
+
+  // Operations of AsyncDBApp running at the same time on one table
+  static int getAsyncTableOperations() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Integer.parseInt(meta.props.getProperty("AsyncTableOperations", "16"));
+  }
+
+  // Distinct strings of a column kept in its dictionary, pages store the strings past it
+  static int getDictionaryMaxSize() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return Integer.parseInt(meta.props.getProperty("DictionaryMaxSize", "65536"));
+  }
+
+  // Layout of new and rebuilt table pages, ROW or COLUMNAR
+  static boolean isColumnarLayout() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    String layout = meta.props.getProperty("PageLayout", "ROW").toUpperCase();
+    if (!layout.equals("ROW") && !layout.equals("COLUMNAR")) {
+      throw new DBAppException("Unknown page layout: " + layout);
+    }
+    return layout.equals("COLUMNAR");
+  }
+
+  static IndexCodec getIndexCodec() throws DBAppException {
+    if (meta == null) {
+      loadMetaData();
+    }
+    return IndexCodec.fromName(meta.props.getProperty("IndexCodec", "FAST"));
+  }
+
   static boolean validateRecord(String tableName, Hashtable<String, Object> row) throws DBAppException {
-    // Get table column data
-    Hashtable<String, String> columns = getColumnData(tableName);
-    // Check if the size of the row is the same as the table's
-    if (row.size() != columns.size() - 1) {
+    // Check if the size of the row is the same as the table's without the touch date
+    if (row.size() != getSchema(tableName).size() - 1) {
       return false;
     }
     return validateMask(tableName, row);
   }
 
   static boolean validateMask(String tableName, Hashtable<String, Object> mask) throws DBAppException {
-    Hashtable<String, String> columns = getColumnData(tableName);
+    TableSchema schema = getSchema(tableName);
     // Check that all values exist and validate the data types
     for (String key : mask.keySet()) {
       // Skip touch date
       if (key.equals("TouchDate")) {
         continue;
       }
-      if (!columns.containsKey(key)) {
-        return false;
-      }
-      try {
-        Class.forName(columns.get(key)).cast(mask.get(key));
-      } catch (ClassNotFoundException e) {
+      int column = schema.indexOf(key);
+      if (column < 0 || !schema.getType(column).isInstance(mask.get(key))) {
         return false;
       }
     }
     return true;
   }
-
-  private static Hashtable<String, String> getColumnData(String tableName) throws DBAppException {
-    if (meta == null) {
-      loadMetaData();
-    }
-    Hashtable<String, String> out = new Hashtable<>();
-    for (Column col : meta.tableMeta.get(tableName)) {
-      out.put(col.getName(), col.getType());
-    }
-    return out;
-  }
 }
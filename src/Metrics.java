@@ -0,0 +1,159 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.*;
+
+// Counters of the page and index I/O of every table and latencies of every operation. Counters are
+// LongAdders so hot paths only pay an uncontended increment. Everything is also published over JMX as
+// DBApp:type=Table,name=<table> and DBApp:type=Operation,name=<operation>
+class Metrics {
+  private static final ConcurrentHashMap<String, TableMetrics> tables = new ConcurrentHashMap<>();
+
+  enum Operation {
+    INSERT, BULK_INSERT, UPDATE, DELETE, SELECT, CREATE_INDEX, ANALYZE, CHECKPOINT;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(long start) {
+      latency.record(start);
+    }
+
+    Map<String, Long> getLatencies() {
+      return latency.getSummary();
+    }
+
+    String getName() {
+      return name().toLowerCase();
+    }
+  }
+
+  static class TableMetrics {
+    final LongAdder pageReads = new LongAdder();
+    final LongAdder pageBytesRead = new LongAdder();
+    final LongAdder pageWrites = new LongAdder();
+    final LongAdder pageBytesWritten = new LongAdder();
+    final LongAdder indexPageReads = new LongAdder();
+    final LongAdder indexPageBytesRead = new LongAdder();
+    final LongAdder indexPageWrites = new LongAdder();
+    final LongAdder indexPageBytesWritten = new LongAdder();
+    // Index pages used by queries and changes, cached or not
+    final LongAdder indexPagesTouched = new LongAdder();
+    final LongAdder rowsScanned = new LongAdder();
+    final LongAdder rowsReturned = new LongAdder();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder cacheMisses = new LongAdder();
+
+    Map<String, Long> getValues() {
+      Map<String, Long> values = new LinkedHashMap<>();
+      values.put("pageReads", pageReads.sum());
+      values.put("pageBytesRead", pageBytesRead.sum());
+      values.put("pageWrites", pageWrites.sum());
+      values.put("pageBytesWritten", pageBytesWritten.sum());
+      values.put("indexPageReads", indexPageReads.sum());
+      values.put("indexPageBytesRead", indexPageBytesRead.sum());
+      values.put("indexPageWrites", indexPageWrites.sum());
+      values.put("indexPageBytesWritten", indexPageBytesWritten.sum());
+      values.put("indexPagesTouched", indexPagesTouched.sum());
+      values.put("rowsScanned", rowsScanned.sum());
+      values.put("rowsReturned", rowsReturned.sum());
+      values.put("cacheHits", cacheHits.sum());
+      values.put("cacheMisses", cacheMisses.sum());
+      return values;
+    }
+  }
+
+  static {
+    for (Operation operation : Operation.values()) {
+      register("Operation", operation.getName(), operation::getLatencies);
+    }
+  }
+
+  static TableMetrics forTable(String tableName) {
+    return tables.computeIfAbsent(tableName, name -> {
+      TableMetrics metrics = new TableMetrics();
+      register("Table", name, metrics::getValues);
+      return metrics;
+    });
+  }
+
+  static Operation getOperation(String name) throws DBAppException {
+    for (Operation operation : Operation.values()) {
+      if (operation.getName().equals(name)) {
+        return operation;
+      }
+    }
+    throw new DBAppException("Unknown operation: " + name);
+  }
+
+  // Private methods
+  private static void register(String type, String name, Supplier<Map<String, Long>> values) {
+    try {
+      ObjectName objectName = new ObjectName("DBApp:type=" + type + ",name=" + ObjectName.quote(name));
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(new MetricsBean(values), objectName);
+      }
+    } catch (JMException e) {
+      // Metrics are still available through DBApp
+    }
+  }
+
+  // Read only MBean with a long attribute per value
+  private static class MetricsBean implements DynamicMBean {
+    private final Supplier<Map<String, Long>> values;
+
+    MetricsBean(Supplier<Map<String, Long>> values) {
+      this.values = values;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Long value = values.get().get(attribute);
+      if (value == null) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      Map<String, Long> current = values.get();
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        if (current.containsKey(attribute)) {
+          list.add(new Attribute(attribute, current.get(attribute)));
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+      throw new MBeanException(new UnsupportedOperationException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      Map<String, Long> current = values.get();
+      MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[current.size()];
+      int i = 0;
+      for (String name : current.keySet()) {
+        attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+      }
+      return new MBeanInfo(getClass().getName(), "DBApp metrics", attributes, null, null, null);
+    }
+  }
+}
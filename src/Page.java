@@ -0,0 +1,45 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+interface Page {
+  File getPageFile();
+
+  // Counters of the table the page belongs to
+  Metrics.TableMetrics getMetrics();
+
+  boolean isChanged();
+
+  boolean isEmpty();
+
+  // Returns the contents of the page file, or null if the page is empty and its file should be deleted
+  byte[] getImage() throws DBAppException;
+
+  // Writes an image returned by getImage and marks the page as unchanged
+  void writeToDisk(byte[] image, boolean sync) throws DBAppException;
+
+  void writeToDisk() throws DBAppException;
+
+  static void writeImage(File pageFile, byte[] image, boolean sync) throws DBAppException {
+    if (image == null) {
+      if (pageFile.exists() && !pageFile.delete()) {
+        throw new DBAppException("Could not delete page: " + pageFile.getPath());
+      }
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(pageFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(image);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (sync) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new DBAppException("Could not write page to disk: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,89 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Vector;
+
+// Rewrites table pages stored with java serialization into the binary page format
+public class PageMigrator {
+
+  public static void main(String[] args) {
+    try {
+      Collection<String> tableNames = args.length > 0 ? Arrays.asList(args) : MetaData.getTableNames();
+      for (String tableName : tableNames) {
+        int migrated = migrateTable(tableName);
+        System.out.printf("Migrated %d pages of table %s.\n", migrated, tableName);
+      }
+    } catch (DBAppException e) {
+      e.printStackTrace();
+    }
+  }
+
+  static int migrateTable(String tableName) throws DBAppException {
+    if (!MetaData.containsTable(tableName)) {
+      throw new DBAppException("The table " + tableName + " does not exist.");
+    }
+    Table table = MetaData.getTable(tableName);
+    int migrated = 0;
+    for (int pageNum = 0; pageNum < table.getPages().size(); pageNum++) {
+      File pageFile = new File(table.getPages().get(pageNum));
+      if (!isLegacyPage(pageFile)) {
+        continue;
+      }
+      LegacyTablePage legacyPage = readLegacyPage(pageFile);
+      TablePage page = TablePage.createPage(pageFile, table.getSchema(),
+          table.getPageIds().get(pageNum), legacyPage.maxSize, MetaData.isColumnarLayout());
+      // The bitmap indices address rows by position, so the rows keep their order
+      for (Hashtable<String, Comparable> record : legacyPage.records) {
+        page.append(Row.fromHashtable(record, table.getSchema(), table.getRowTypes()));
+      }
+      page.writeToDisk();
+      migrated++;
+    }
+    if (migrated > 0) {
+      // Rows of older tables may overlap between pages, they are put in key order once they can be read
+      table.rebuildKeyDirectory();
+    }
+    return migrated;
+  }
+
+  private static boolean isLegacyPage(File pageFile) throws DBAppException {
+    try (DataInputStream reader = new DataInputStream(new FileInputStream(pageFile))) {
+      return reader.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+    } catch (IOException e) {
+      throw new DBAppException("Could not read page: " + e.getMessage());
+    }
+  }
+
+  private static LegacyTablePage readLegacyPage(File pageFile) throws DBAppException {
+    try (ObjectInputStream reader = new LegacyInputStream(new FileInputStream(pageFile))) {
+      return (LegacyTablePage) reader.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new DBAppException("Could not load legacy page: " + e.getMessage());
+    }
+  }
+
+  // Field layout of the serialized TablePage
+  private static class LegacyTablePage implements Serializable {
+    // Computed for the serialized TablePage class
+    private static final long serialVersionUID = -1631032772495095686L;
+    private Vector<Hashtable<String, Comparable>> records;
+    private int maxSize;
+  }
+
+  // Reads serialized TablePage objects as LegacyTablePage
+  private static class LegacyInputStream extends ObjectInputStream {
+    LegacyInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+      ObjectStreamClass descriptor = super.readClassDescriptor();
+      if (descriptor.getName().equals("TablePage")) {
+        return ObjectStreamClass.lookup(LegacyTablePage.class);
+      }
+      return descriptor;
+    }
+  }
+}
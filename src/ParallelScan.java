@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+
+// Runs page scans on a shared fork/join pool, the degree of parallelism is chosen per query
+class ParallelScan {
+  private static ForkJoinPool pool;
+
+  interface PageTask<T> {
+    T run(int pageNum) throws DBAppException;
+  }
+
+  static <T> Future<T> submit(Callable<T> task) throws DBAppException {
+    return getPool().submit(task);
+  }
+
+  // Waits for a task and rethrows its failure
+  static <T> T get(Future<T> future) throws DBAppException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DBAppException("Interrupted while scanning pages");
+    } catch (ExecutionException e) {
+      // Fork/join tasks carry the failure of a page inside an unchecked exception
+      Throwable cause = e.getCause();
+      while (!(cause instanceof DBAppException) && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof DBAppException) {
+        throw (DBAppException) cause;
+      }
+      throw new DBAppException("Could not scan pages: " + cause);
+    }
+  }
+
+  // Takes a lock from a pool thread. The pool starts another thread while this one waits, so the tasks of a
+  // writer holding the lock can still run
+  static void lock(Lock lock) throws DBAppException {
+    if (lock.tryLock()) {
+      return;
+    }
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        private boolean locked;
+
+        @Override
+        public boolean block() {
+          lock.lock();
+          locked = true;
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return locked || (locked = lock.tryLock());
+        }
+      });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DBAppException("Interrupted while waiting for a table lock");
+    }
+  }
+
+  // Runs the task on every page with at most parallelism tasks at a time, the results are in page order
+  static <T> List<T> map(int[] pageNums, int parallelism, PageTask<T> task) throws DBAppException {
+    if (parallelism <= 1 || pageNums.length <= 1) {
+      List<T> results = new ArrayList<>(pageNums.length);
+      for (int pageNum : pageNums) {
+        results.add(task.run(pageNum));
+      }
+      return results;
+    }
+    // Every leaf scans a contiguous range, so there are never more leaves than the degree of parallelism
+    int leafSize = (pageNums.length + parallelism - 1) / parallelism;
+    return get(getPool().submit(new ScanTask<>(pageNums, 0, pageNums.length, leafSize, task)));
+  }
+
+  // Private methods
+  private static synchronized ForkJoinPool getPool() throws DBAppException {
+    if (pool == null) {
+      pool = new ForkJoinPool(Math.max(1, MetaData.getScanThreads()));
+    }
+    return pool;
+  }
+
+  private static class ScanTask<T> extends RecursiveTask<List<T>> {
+    private static final long serialVersionUID = 1L;
+    private final int[] pageNums;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+    private final PageTask<T> task;
+
+    ScanTask(int[] pageNums, int from, int to, int leafSize, PageTask<T> task) {
+      this.pageNums = pageNums;
+      this.from = from;
+      this.to = to;
+      this.leafSize = leafSize;
+      this.task = task;
+    }
+
+    @Override
+    protected List<T> compute() {
+      if (to - from <= leafSize) {
+        List<T> results = new ArrayList<>(to - from);
+        try {
+          for (int i = from; i < to; i++) {
+            results.add(task.run(pageNums[i]));
+          }
+        } catch (DBAppException e) {
+          throw new IllegalStateException(e.getMessage(), e);
+        }
+        return results;
+      }
+      // Split on a leaf boundary so the leaves stay the same size
+      int leaves = (to - from + leafSize - 1) / leafSize;
+      int mid = from + leaves / 2 * leafSize;
+      ScanTask<T> left = new ScanTask<>(pageNums, from, mid, leafSize, task);
+      ScanTask<T> right = new ScanTask<>(pageNums, mid, to, leafSize, task);
+      left.fork();
+      List<T> results = right.compute();
+      List<T> merged = left.join();
+      merged.addAll(results);
+      return merged;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+import java.util.List;
+
+// Condition of a select compiled into a tree, AND binds tighter than OR and XOR
+class Predicate {
+  static final int TERM = 0;
+  static final int AND = 1;
+  static final int OR = 2;
+  static final int XOR = 3;
+  // Term operators
+  static final int EQUAL = 0;
+  static final int NOT_EQUAL = 1;
+  static final int LESS = 2;
+  static final int LESS_OR_EQUAL = 3;
+  static final int GREATER = 4;
+  static final int GREATER_OR_EQUAL = 5;
+
+  final int type;
+  final Predicate left;
+  final Predicate right;
+  final SQLTerm term;
+  final String column;
+  final int operator;
+  final Comparable value;
+  // Access path chosen by the planner for a term
+  boolean useIndex;
+  // Position of the column of a term in the rows, set by the planner
+  int ordinal = -1;
+  // Dictionary order of a term on a String column, rows with a ranked code compare it to the key of the value
+  StringDictionary.Order order;
+  int orderKey;
+
+  Predicate(int type, Predicate left, Predicate right) {
+    this.type = type;
+    this.left = left;
+    this.right = right;
+    term = null;
+    column = null;
+    operator = -1;
+    value = null;
+  }
+
+  private Predicate(SQLTerm term) throws DBAppException {
+    type = TERM;
+    left = null;
+    right = null;
+    this.term = term;
+    column = term._strColumnName;
+    operator = operatorCode(term._strOperator);
+    value = (Comparable) term._objValue;
+  }
+
+  static Predicate compile(SQLTerm[] terms, String[] operators) throws DBAppException {
+    Predicate result = null;
+    int resultOperator = -1;
+    Predicate group = new Predicate(terms[0]);
+    for (int i = 1; i <= terms.length; i++) {
+      if (i == terms.length || !"AND".equals(operators[i - 1])) {
+        // Merge the finished group into the result
+        result = result == null ? group : new Predicate(resultOperator, result, group);
+        if (i == terms.length) {
+          break;
+        }
+        resultOperator = "XOR".equals(operators[i - 1]) ? XOR : OR;
+        group = new Predicate(terms[i]);
+      } else {
+        group = new Predicate(AND, group, new Predicate(terms[i]));
+      }
+    }
+    return result;
+  }
+
+  // Adds the operands of a chain of ANDs to the list
+  void collectAnd(List<Predicate> operands) {
+    if (type == AND) {
+      left.collectAnd(operands);
+      right.collectAnd(operands);
+    } else {
+      operands.add(this);
+    }
+  }
+
+  // Rows without a value for the column of a term don't match it
+  boolean matches(Row record) {
+    switch (type) {
+      case AND:
+        return left.matches(record) && right.matches(record);
+      case OR:
+        return left.matches(record) || right.matches(record);
+      case XOR:
+        return left.matches(record) ^ right.matches(record);
+      default:
+        if (!record.isPresent(ordinal)) {
+          return false;
+        }
+        if (order != null && order.hasRank(record.getCode(ordinal))) {
+          return compare(Integer.compare(order.key(record.getCode(ordinal)), orderKey));
+        }
+        return compare(record.compare(ordinal, value));
+    }
+  }
+
+  void setOrder(StringDictionary.Order order) {
+    this.order = order;
+    orderKey = order.key((String) value);
+  }
+
+  @Override
+  public String toString() {
+    switch (type) {
+      case AND:
+        return left + " AND " + right;
+      case OR:
+        return "(" + left + " OR " + right + ")";
+      case XOR:
+        return "(" + left + " XOR " + right + ")";
+      default:
+        return column + " " + term._strOperator + " " + (value instanceof String ? "'" + value + "'" : value);
+    }
+  }
+
+  private boolean compare(int comparison) {
+    switch (operator) {
+      case EQUAL:
+        return comparison == 0;
+      case NOT_EQUAL:
+        return comparison != 0;
+      case LESS:
+        return comparison < 0;
+      case LESS_OR_EQUAL:
+        return comparison <= 0;
+      case GREATER:
+        return comparison > 0;
+      default:
+        return comparison >= 0;
+    }
+  }
+
+  private static int operatorCode(String operator) throws DBAppException {
+    switch (operator) {
+      case "=":
+        return EQUAL;
+      case "!=":
+        return NOT_EQUAL;
+      case "<":
+        return LESS;
+      case "<=":
+        return LESS_OR_EQUAL;
+      case ">":
+        return GREATER;
+      case ">=":
+        return GREATER_OR_EQUAL;
+      default:
+        throw new DBAppException("Invalid term operator: " + operator);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Plan of a select returned by DBApp.explain. Estimates need statistics from DBApp.analyzeTable and are -1
+// without them. DBApp.explainAnalyze also runs the select and fills in what it actually did
+public class QueryPlan {
+  private final String tableName;
+  private final String condition;
+  private final int tablePages;
+  private final List<TermPlan> terms;
+  private final int estimatedPages;
+  private final long estimatedRows;
+  private final long planNanos;
+  private boolean analyzed;
+  private int candidatePages;
+  private long candidateRows;
+  private long pagesScanned;
+  private long pagesRead;
+  private long indexPagesTouched;
+  private long indexPagesRead;
+  private long rowsExamined;
+  private long rowsReturned;
+  private long indexNanos;
+  private long scanNanos;
+
+  // Access path of a single term, in the order the terms are evaluated
+  public static class TermPlan {
+    private final String term;
+    private final String accessPath;
+    private final int pages;
+    private final long estimatedRows;
+    private final int estimatedIndexPages;
+
+    TermPlan(String term, String accessPath, int pages, long estimatedRows, int estimatedIndexPages) {
+      this.term = term;
+      this.accessPath = accessPath;
+      this.pages = pages;
+      this.estimatedRows = estimatedRows;
+      this.estimatedIndexPages = estimatedIndexPages;
+    }
+
+    public String getTerm() {
+      return term;
+    }
+
+    // "bitmap index", "key range" or "page scan"
+    public String getAccessPath() {
+      return accessPath;
+    }
+
+    // Pages left by the fence keys and zone maps for this term alone
+    public int getPages() {
+      return pages;
+    }
+
+    public long getEstimatedRows() {
+      return estimatedRows;
+    }
+
+    // Index pages the probe loads, 0 for terms that don't use an index
+    public int getEstimatedIndexPages() {
+      return estimatedIndexPages;
+    }
+
+    @Override
+    public String toString() {
+      String plan = term + ": " + accessPath + ", " + pages + " pages";
+      if (estimatedIndexPages > 0) {
+        plan += ", " + estimatedIndexPages + " index pages";
+      }
+      return plan + ", " + format(estimatedRows) + " rows";
+    }
+  }
+
+  QueryPlan(String tableName, String condition, int tablePages, List<TermPlan> terms, int estimatedPages,
+            long estimatedRows, long planNanos) {
+    this.tableName = tableName;
+    this.condition = condition;
+    this.tablePages = tablePages;
+    this.terms = new ArrayList<>(terms);
+    this.estimatedPages = estimatedPages;
+    this.estimatedRows = estimatedRows;
+    this.planNanos = planNanos;
+  }
+
+  // Index and page counts are read from the table counters, so selects running at the same time on the
+  // table are counted too
+  void setActual(int candidatePages, long candidateRows, long indexNanos, long indexPagesTouched,
+                 long indexPagesRead) {
+    analyzed = true;
+    this.candidatePages = candidatePages;
+    this.candidateRows = candidateRows;
+    this.indexNanos = indexNanos;
+    this.indexPagesTouched = indexPagesTouched;
+    this.indexPagesRead = indexPagesRead;
+  }
+
+  void setScan(long pagesScanned, long pagesRead, long rowsExamined, long rowsReturned, long scanNanos) {
+    this.pagesScanned = pagesScanned;
+    this.pagesRead = pagesRead;
+    this.rowsExamined = rowsExamined;
+    this.rowsReturned = rowsReturned;
+    this.scanNanos = scanNanos;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  // The condition as it is evaluated, after the terms of AND groups were ordered
+  public String getCondition() {
+    return condition;
+  }
+
+  public int getTablePages() {
+    return tablePages;
+  }
+
+  public List<TermPlan> getTerms() {
+    return terms;
+  }
+
+  // Pages expected to be scanned after the fence keys, zone maps and indices
+  public int getEstimatedPages() {
+    return estimatedPages;
+  }
+
+  public long getEstimatedRows() {
+    return estimatedRows;
+  }
+
+  public long getPlanNanos() {
+    return planNanos;
+  }
+
+  public boolean isAnalyzed() {
+    return analyzed;
+  }
+
+  // Pages left after the index probe
+  public int getCandidatePages() {
+    return candidatePages;
+  }
+
+  // Rows the index probe left, -1 when no index was used
+  public long getCandidateRows() {
+    return candidateRows;
+  }
+
+  public long getPagesScanned() {
+    return pagesScanned;
+  }
+
+  // Scanned pages that were not in the buffer pool
+  public long getPagesRead() {
+    return pagesRead;
+  }
+
+  public long getIndexPagesTouched() {
+    return indexPagesTouched;
+  }
+
+  public long getIndexPagesRead() {
+    return indexPagesRead;
+  }
+
+  public long getRowsExamined() {
+    return rowsExamined;
+  }
+
+  public long getRowsReturned() {
+    return rowsReturned;
+  }
+
+  public long getIndexNanos() {
+    return indexNanos;
+  }
+
+  public long getScanNanos() {
+    return scanNanos;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder plan = new StringBuilder();
+    plan.append("Select from ").append(tableName).append(" where ").append(condition).append('\n');
+    for (TermPlan term : terms) {
+      plan.append("  ").append(term).append('\n');
+    }
+    plan.append("Estimated: ").append(estimatedPages).append(" of ").append(tablePages).append(" pages, ")
+        .append(format(estimatedRows)).append(" rows\n");
+    plan.append("Planning: ").append(micros(planNanos)).append('\n');
+    if (analyzed) {
+      plan.append("Index probe: ").append(indexPagesTouched).append(" index pages, ").append(indexPagesRead)
+          .append(" read from disk, ").append(candidatePages).append(" candidate pages, ");
+      if (candidateRows >= 0) {
+        plan.append(candidateRows).append(" candidate rows, ");
+      }
+      plan.append(micros(indexNanos)).append('\n');
+      plan.append("Scan: ").append(pagesScanned).append(" pages, ").append(pagesRead).append(" read from disk, ")
+          .append(rowsExamined).append(" rows examined, ").append(rowsReturned).append(" returned, ")
+          .append(micros(scanNanos)).append('\n');
+    }
+    return plan.toString();
+  }
+
+  // Private methods
+  private static String format(long estimate) {
+    return estimate < 0 ? "unknown" : String.valueOf(estimate);
+  }
+
+  private static String micros(long nanos) {
+    return String.format("%.1f us", nanos / 1e3);
+  }
+}
@@ -0,0 +1,164 @@
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+// Lazily scans the candidate pages of a select, a page is only loaded once the caller reaches it.
+// Without a predicate every row of the pages is returned. With a parallelism above one, that many pages
+// are loaded and filtered ahead of the caller, rows are still returned in page order. With a snapshot the
+// rows are returned as they were when the select was planned, pages changed since then are read from their
+// saved images without any lock. Other pages are read under the read lock of the table, so writers only
+// ever wait for the scan of a single page
+class ResultIterator implements Iterator<Hashtable<String, Object>> {
+  private final Table table;
+  // Ids of the pages, positions shift while writers add and remove pages
+  private final int[] candidatePages;
+  private final CompressedBitmap locations;
+  private final Predicate predicate;
+  private final int parallelism;
+  // Released once the last page was scanned, or when an abandoned iterator is collected
+  private final VersionStore.Snapshot snapshot;
+  private final Cleaner.Cleanable cleanable;
+  private int nextPage;
+  private Hashtable<String, Object> nextRecord;
+  // Pages being scanned ahead, in page order
+  private final ArrayDeque<Future<List<Hashtable<String, Object>>>> pendingPages;
+  private Iterator<Hashtable<String, Object>> currentRows;
+  // Rows of the scanned pages, before filtering
+  private final LongAdder rowsExamined;
+
+  private static final Cleaner cleaner = Cleaner.create();
+
+  // Reads the current pages, for a caller holding the write lock
+  ResultIterator(Table table, int[] candidatePages, CompressedBitmap locations, Predicate predicate) {
+    this(table, candidatePages, locations, predicate, 1, null);
+  }
+
+  // Must be created under a lock of the table
+  ResultIterator(Table table, int[] candidatePages, CompressedBitmap locations, Predicate predicate,
+                 int parallelism, VersionStore.Snapshot snapshot) {
+    this.table = table;
+    this.candidatePages = new int[candidatePages.length];
+    for (int i = 0; i < candidatePages.length; i++) {
+      this.candidatePages[i] = table.getPageIds().get(candidatePages[i]);
+    }
+    this.locations = locations;
+    this.predicate = predicate;
+    this.parallelism = parallelism;
+    this.snapshot = snapshot;
+    cleanable = snapshot == null ? null : cleaner.register(this, snapshot::release);
+    pendingPages = new ArrayDeque<>();
+    rowsExamined = new LongAdder();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextRecord == null) {
+      try {
+        nextRecord = parallelism > 1 ? advanceParallel() : advance();
+      } catch (DBAppException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+    return nextRecord != null;
+  }
+
+  @Override
+  public Hashtable<String, Object> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Hashtable<String, Object> record = nextRecord;
+    nextRecord = null;
+    return record;
+  }
+
+  private Hashtable<String, Object> advance() throws DBAppException {
+    while (currentRows == null || !currentRows.hasNext()) {
+      if (nextPage == candidatePages.length) {
+        // Release the rows of the last page
+        currentRows = null;
+        release();
+        return null;
+      }
+      currentRows = scanPage(candidatePages[nextPage++]).iterator();
+    }
+    return currentRows.next();
+  }
+
+  private Hashtable<String, Object> advanceParallel() throws DBAppException {
+    while (true) {
+      if (currentRows != null && currentRows.hasNext()) {
+        return currentRows.next();
+      }
+      // Keep parallelism pages in flight
+      while (pendingPages.size() < parallelism && nextPage < candidatePages.length) {
+        int pageId = candidatePages[nextPage++];
+        pendingPages.add(ParallelScan.submit(() -> scanPage(pageId)));
+      }
+      if (pendingPages.isEmpty()) {
+        release();
+        return null;
+      }
+      currentRows = ParallelScan.get(pendingPages.poll()).iterator();
+    }
+  }
+
+  // Pages whose scan started
+  int getPagesScanned() {
+    return nextPage;
+  }
+
+  long getRowsExamined() {
+    return rowsExamined.sum();
+  }
+
+  private void release() {
+    if (cleanable != null) {
+      cleanable.clean();
+    }
+  }
+
+  // Copies the matching rows of a page, the caller must not hold a lock of the table while waiting for
+  // scans on other threads
+  private List<Hashtable<String, Object>> scanPage(int pageId) throws DBAppException {
+    TablePage page = snapshot == null ? null : snapshot.getPage(pageId, table.getSchema());
+    if (page != null) {
+      return filter(pageId, page);
+    }
+    Lock readLock = table.getLock().readLock();
+    ParallelScan.lock(readLock);
+    try {
+      // A writer may have saved the page since it was checked
+      page = snapshot == null ? null : snapshot.getPage(pageId, table.getSchema());
+      if (page == null) {
+        Integer pageNum = table.getPagePosition(pageId);
+        if (pageNum == null) {
+          // Only a reader without a snapshot can miss a page, it was emptied and removed
+          return new ArrayList<>();
+        }
+        page = table.loadPage(pageNum);
+      }
+      return filter(pageId, page);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  private List<Hashtable<String, Object>> filter(int pageId, TablePage page) {
+    // Rows ruled out by the indices are skipped, columnar pages only read the columns of the condition
+    long[] words = locations == null ? null : locations.getPage(pageId);
+    // Rows leave the table as new hashtables, callers can't modify the cached page
+    List<Hashtable<String, Object>> rows = page.getRecords(page.select(predicate, words));
+    rowsExamined.add(page.size());
+    page.getMetrics().rowsScanned.add(page.size());
+    page.getMetrics().rowsReturned.add(rows.size());
+    return rows;
+  }
+}
@@ -0,0 +1,236 @@
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Map;
+
+// Row of a table page. Columns are addressed by their position in the table schema and numbers, booleans
+// and dates are kept unboxed, so comparing a column neither hashes its name nor allocates. Rows become
+// hashtables only when they leave the table
+class Row {
+  static final byte INTEGER = 0;
+  static final byte DOUBLE = 1;
+  static final byte BOOLEAN = 2;
+  static final byte DATE = 3;
+  static final byte STRING = 4;
+
+  // Types of the columns, shared by the rows of a page
+  private final byte[] types;
+  // Bits of the values that are not strings: ints, raw double bits, 0 or 1, and epoch milliseconds. Strings
+  // keep their code in the dictionary of the column, or -1
+  private final long[] values;
+  // Only allocated for rows with a string value
+  private String[] strings;
+  // Columns that have a value
+  private final long[] present;
+
+  Row(byte[] types) {
+    this.types = types;
+    values = new long[types.length];
+    present = new long[(types.length + 63) >>> 6];
+  }
+
+  static byte[] getTypes(Column[] schema) {
+    byte[] types = new byte[schema.length];
+    for (int i = 0; i < schema.length; i++) {
+      switch (schema[i].getType()) {
+        case ("java.lang.Integer"):
+          types[i] = INTEGER;
+          break;
+        case ("java.lang.Double"):
+          types[i] = DOUBLE;
+          break;
+        case ("java.lang.Boolean"):
+          types[i] = BOOLEAN;
+          break;
+        case ("java.util.Date"):
+          types[i] = DATE;
+          break;
+        default:
+          types[i] = STRING;
+      }
+    }
+    return types;
+  }
+
+  // Columns missing from the record are left without a value
+  static Row fromHashtable(Map<String, ?> record, Column[] schema, byte[] types) {
+    Row row = new Row(types);
+    for (int i = 0; i < schema.length; i++) {
+      Object value = record.get(schema[i].getName());
+      if (value != null) {
+        row.set(i, (Comparable) value);
+      }
+    }
+    return row;
+  }
+
+  Hashtable<String, Object> toHashtable(Column[] schema) {
+    Hashtable<String, Object> record = new Hashtable<>(schema.length * 2);
+    for (int i = 0; i < schema.length; i++) {
+      if (isPresent(i)) {
+        record.put(schema[i].getName(), get(i));
+      }
+    }
+    return record;
+  }
+
+  boolean isPresent(int column) {
+    return (present[column >>> 6] & (1L << column)) != 0;
+  }
+
+  // Boxes the value, or returns null if the column has none
+  Comparable get(int column) {
+    if (!isPresent(column)) {
+      return null;
+    }
+    switch (types[column]) {
+      case INTEGER:
+        return (int) values[column];
+      case DOUBLE:
+        return Double.longBitsToDouble(values[column]);
+      case BOOLEAN:
+        return values[column] != 0;
+      case DATE:
+        return new Date(values[column]);
+      default:
+        return strings[column];
+    }
+  }
+
+  // Raw bits of a column that is not a string, 0 if the column has no value
+  long getBits(int column) {
+    return values[column];
+  }
+
+  String getString(int column) {
+    return strings == null ? null : strings[column];
+  }
+
+  // Dictionary code of a string, -1 if it has none
+  int getCode(int column) {
+    return (int) values[column];
+  }
+
+  void set(int column, Comparable value) {
+    if (value == null) {
+      present[column >>> 6] &= ~(1L << column);
+      values[column] = 0;
+      if (strings != null) {
+        strings[column] = null;
+      }
+      return;
+    }
+    switch (types[column]) {
+      case INTEGER:
+        values[column] = (Integer) value;
+        break;
+      case DOUBLE:
+        values[column] = Double.doubleToRawLongBits((Double) value);
+        break;
+      case BOOLEAN:
+        values[column] = (Boolean) value ? 1 : 0;
+        break;
+      case DATE:
+        values[column] = ((Date) value).getTime();
+        break;
+      default:
+        setString(column, (String) value);
+        return;
+    }
+    present[column >>> 6] |= 1L << column;
+  }
+
+  // Sets a column that is not a string from its raw bits
+  void setBits(int column, long bits) {
+    values[column] = bits;
+    present[column >>> 6] |= 1L << column;
+  }
+
+  void setString(int column, String value) {
+    setString(column, value, -1);
+  }
+
+  void setString(int column, String value, int code) {
+    if (strings == null) {
+      strings = new String[types.length];
+    }
+    strings[column] = value;
+    values[column] = code;
+    present[column >>> 6] |= 1L << column;
+  }
+
+  // Compares a column that has a value with a value of the column type
+  int compare(int column, Comparable value) {
+    switch (types[column]) {
+      case INTEGER:
+        return Integer.compare((int) values[column], (Integer) value);
+      case DOUBLE:
+        return Double.compare(Double.longBitsToDouble(values[column]), (Double) value);
+      case BOOLEAN:
+        return Boolean.compare(values[column] != 0, (Boolean) value);
+      case DATE:
+        return Long.compare(values[column], ((Date) value).getTime());
+      default:
+        return strings[column].compareTo((String) value);
+    }
+  }
+
+  // Compares a column of two rows of the same table that both have a value
+  int compare(int column, Row other) {
+    switch (types[column]) {
+      case INTEGER:
+        return Integer.compare((int) values[column], (int) other.values[column]);
+      case DOUBLE:
+        return Double.compare(Double.longBitsToDouble(values[column]),
+            Double.longBitsToDouble(other.values[column]));
+      case BOOLEAN:
+      case DATE:
+        return Long.compare(values[column], other.values[column]);
+      default:
+        return strings[column].compareTo(other.strings[column]);
+    }
+  }
+
+  // Checks if the row has every value of the mask
+  boolean matches(Row mask) {
+    for (int column = 0; column < types.length; column++) {
+      if (!mask.isPresent(column)) {
+        continue;
+      }
+      if (!isPresent(column)) {
+        return false;
+      }
+      if (types[column] == STRING && values[column] >= 0 && mask.values[column] >= 0) {
+        // Strings with codes of the same dictionary are equal if the codes are
+        if (values[column] != mask.values[column]) {
+          return false;
+        }
+      } else if (compare(column, mask) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Takes the values of the mask
+  void update(Row mask) {
+    for (int column = 0; column < types.length; column++) {
+      if (mask.isPresent(column)) {
+        if (types[column] == STRING) {
+          setString(column, mask.strings[column], (int) mask.values[column]);
+        } else {
+          setBits(column, mask.values[column]);
+        }
+      }
+    }
+  }
+
+  Row copy() {
+    Row copy = new Row(types);
+    System.arraycopy(values, 0, copy.values, 0, values.length);
+    System.arraycopy(present, 0, copy.present, 0, present.length);
+    if (strings != null) {
+      copy.strings = strings.clone();
+    }
+    return copy;
+  }
+}
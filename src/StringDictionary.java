@@ -0,0 +1,217 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Strings of a String column of a table, table pages store their codes instead of the strings. Codes are
+// given in arrival order and never change, so pages on disk stay valid as the dictionary grows. The rank
+// of a code is its position in string order, so range terms compare integers too. A column with more
+// distinct strings than DictionaryMaxSize keeps the strings that don't fit in the pages
+class StringDictionary {
+  // Dictionaries of every table by the path of the table directory, null for columns that aren't strings
+  private static final ConcurrentHashMap<String, StringDictionary[]> tables = new ConcurrentHashMap<>();
+  private final File file;
+  private final int maxSize;
+  private final HashMap<String, Integer> codes;
+  // Strings by code, replaced when it grows so decoding doesn't take the lock
+  private volatile String[] strings;
+  private int size;
+  // Codes in string order
+  private int[] sorted;
+  // Codes and bytes already in the file
+  private int written;
+  private long fileLength;
+  private volatile Order order;
+
+  // Ranks of the codes at some point, codes added since then don't have one
+  static class Order {
+    private final int[] ranks;
+    private final String[] sortedStrings;
+
+    private Order(int[] ranks, String[] sortedStrings) {
+      this.ranks = ranks;
+      this.sortedStrings = sortedStrings;
+    }
+
+    boolean hasRank(int code) {
+      return code >= 0 && code < ranks.length;
+    }
+
+    // Twice the rank of a code, compares with the key of a string like the strings do
+    int key(int code) {
+      return ranks[code] << 1;
+    }
+
+    // Twice the rank of the string, or the odd number between the ranks of its neighbours
+    int key(String value) {
+      int position = Arrays.binarySearch(sortedStrings, value);
+      return position >= 0 ? position << 1 : ((-position - 1) << 1) - 1;
+    }
+  }
+
+  private StringDictionary(File file, int maxSize) {
+    this.file = file;
+    this.maxSize = maxSize;
+    codes = new HashMap<>();
+    strings = new String[16];
+    sorted = new int[16];
+  }
+
+  static StringDictionary[] forTable(File tableDirectory, Column[] schema) throws DBAppException {
+    StringDictionary[] dictionaries = tables.get(tableDirectory.getPath());
+    if (dictionaries != null) {
+      return dictionaries;
+    }
+    synchronized (tables) {
+      dictionaries = tables.get(tableDirectory.getPath());
+      if (dictionaries == null) {
+        byte[] types = Row.getTypes(schema);
+        dictionaries = new StringDictionary[schema.length];
+        for (int i = 0; i < schema.length; i++) {
+          if (types[i] == Row.STRING) {
+            File file = new File(tableDirectory, "dictionaries/" + schema[i].getName());
+            dictionaries[i] = new StringDictionary(file, MetaData.getDictionaryMaxSize());
+            dictionaries[i].load();
+          }
+        }
+        tables.put(tableDirectory.getPath(), dictionaries);
+      }
+      return dictionaries;
+    }
+  }
+
+  // Forgets the loaded dictionaries, strings not flushed yet are lost
+  static void reset() {
+    tables.clear();
+  }
+
+  // Code of the string, a new string gets the next code. Returns -1 if the dictionary is full
+  synchronized int encode(String value) {
+    Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    if (size >= maxSize) {
+      return -1;
+    }
+    add(value);
+    return size - 1;
+  }
+
+  // Code of the string, or -1 if the dictionary doesn't have it
+  synchronized int lookup(String value) {
+    Integer code = codes.get(value);
+    return code == null ? -1 : code;
+  }
+
+  String decode(int code) {
+    return strings[code];
+  }
+
+  Order getOrder() {
+    Order current = order;
+    if (current == null) {
+      synchronized (this) {
+        current = order;
+        if (current == null) {
+          int[] ranks = new int[size];
+          String[] sortedStrings = new String[size];
+          for (int rank = 0; rank < size; rank++) {
+            ranks[sorted[rank]] = rank;
+            sortedStrings[rank] = strings[sorted[rank]];
+          }
+          current = new Order(ranks, sortedStrings);
+          order = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  // Appends the new strings to the file, pages with their codes must only be written after this
+  synchronized void flush() throws DBAppException {
+    if (written == size) {
+      return;
+    }
+    byte[][] encoded = new byte[size - written][];
+    int length = 0;
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = strings[written + i].getBytes(StandardCharsets.UTF_8);
+      length += 4 + encoded[i].length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    for (byte[] string : encoded) {
+      buffer.putInt(string.length);
+      buffer.put(string);
+    }
+    buffer.flip();
+    file.getParentFile().mkdirs();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      // A string torn by a crash is overwritten
+      channel.position(fileLength);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    } catch (IOException e) {
+      throw new DBAppException("Could not write dictionary: " + e.getMessage());
+    }
+    fileLength += length;
+    written = size;
+  }
+
+  // Private methods
+  private void load() throws DBAppException {
+    if (!file.exists()) {
+      return;
+    }
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      throw new DBAppException("Could not read dictionary: " + e.getMessage());
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.remaining() >= 4) {
+      int length = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        break;
+      }
+      add(new String(bytes, buffer.position(), length, StandardCharsets.UTF_8));
+      buffer.position(buffer.position() + length);
+      fileLength = buffer.position();
+    }
+    written = size;
+  }
+
+  private void add(String value) {
+    if (size == strings.length) {
+      strings = Arrays.copyOf(strings, size * 2);
+      sorted = Arrays.copyOf(sorted, size * 2);
+    }
+    // Keep the codes in string order
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (strings[sorted[mid]].compareTo(value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    System.arraycopy(sorted, low, sorted, low + 1, size - low);
+    sorted[low] = size;
+    strings[size] = value;
+    codes.put(value, size);
+    size++;
+    order = null;
+  }
+}
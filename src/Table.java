@@ -1,118 +1,337 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Table implements Serializable {
+  private static final long serialVersionUID = 6062629653855373460L;
   transient private Hashtable<String, Column> columns;
+  transient private volatile Column[] schema;
+  transient private volatile byte[] rowTypes;
   private Hashtable<String, Index> indices;
   private String name;
   transient private String path;
   private ArrayList<String> pages;
+  // Stable ids of the pages, in the same order as pages
+  private ArrayList<Integer> pageIds;
+  private int nextPageId;
+  transient private volatile HashMap<Integer, Integer> pagePositions;
   private String keyColumn;
+  // Fence keys of every page, in the same order as pages
+  private ArrayList<Comparable> minKeys;
+  private ArrayList<Comparable> maxKeys;
+  // Column summaries of every page, in the same order as pages
+  private ArrayList<ZoneMap> zoneMaps;
+  // Gathered by analyze, null until the table is analyzed
+  private TableStatistics statistics;
+  transient private WriteAheadLog log;
+  // Row changes take the write lock, selects and checkpoints the read lock. Checkpoints also hold the
+  // table monitor so they don't overlap
+  transient private ReentrantReadWriteLock lock;
+  // Number of row changes, the version seen by snapshots taken now
+  transient private long changeCount;
+  // Page images replaced while snapshots were reading them
+  transient private VersionStore versions;
+  // Set while the log is redone, the log is the only copy of the entries not redone yet
+  transient private boolean recovering;
+  // Log record of the row change in progress, checkpoints in the middle of the change log it again
+  transient private byte[] loggedChange;
 
 
-  Iterator select(SQLTerm[] terms, String[] operators) throws DBAppException {
-    // Get possible placements
-    boolean[][] locations = getLocations(terms, operators);
-    // Initialize result sets
-    HashSet<Hashtable<String, Comparable>> bag0 = null;
-    HashSet<Hashtable<String, Comparable>> bag1 = executeQuery(terms[0], locations);
-    for (int index = 1; index < terms.length; index++) {
-      // Get the second bag
-      HashSet<Hashtable<String, Comparable>> tmp = executeQuery(terms[index], locations);
-      // Merge bags into bag2
-      String operator = operators[index - 1];
-      switch (operator) {
-        case ("OR"):
-          bag1 = orBags(bag1, tmp);
-          break;
-        case ("XOR"):
-          bag1 = xorBags(bag1, tmp);
-          break;
-        case ("AND"):
-          if (bag0 == null) {
-            bag0 = bag1;
-            break;
-          }
-          bag0 = andBags(bag0, bag1);
-          bag1 = tmp;
-          break;
+  Iterator<Hashtable<String, Object>> select(SQLTerm[] terms, String[] operators, int parallelism)
+      throws DBAppException {
+    lockForSelect();
+    try {
+      // Compile the condition once and evaluate it in a single scan
+      Predicate predicate = plan(Predicate.compile(terms, operators));
+      // Get possible placements
+      CompressedBitmap locations = getLocations(predicate);
+      // Pages are loaded as the caller advances the iterator, the snapshot keeps them as they are now and
+      // the locations already hold the matching rows of the current index version
+      return new ResultIterator(this, getCandidatePages(getPageRanges(predicate), locations), locations, predicate,
+          parallelism, versions.pin(changeCount));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Plans the select like select does. When analyzed the select also runs, its rows are dropped
+  QueryPlan explain(SQLTerm[] terms, String[] operators, boolean analyze, int parallelism) throws DBAppException {
+    Metrics.TableMetrics metrics = Metrics.forTable(name);
+    QueryPlan queryPlan;
+    ResultIterator result;
+    lockForSelect();
+    try {
+      long start = System.nanoTime();
+      Predicate predicate = plan(Predicate.compile(terms, operators));
+      ArrayList<QueryPlan.TermPlan> termPlans = new ArrayList<>();
+      describeTerms(predicate, termPlans);
+      int scanPages = getPageRanges(predicate).cardinality();
+      long estimatedRows = -1;
+      int estimatedPages = scanPages;
+      if (statistics != null) {
+        double selectivity = statistics.selectivity(predicate);
+        estimatedRows = Math.round(selectivity * statistics.getRowCount());
+        if (usesIndex(predicate)) {
+          estimatedPages = (int) Math.ceil(estimateMatchingPages(scanPages, indexSelectivity(predicate)));
+        }
+      }
+      queryPlan = new QueryPlan(name, predicate.toString(), pages.size(), termPlans, estimatedPages, estimatedRows,
+          System.nanoTime() - start);
+      if (!analyze) {
+        return queryPlan;
       }
+      long indexPagesTouched = metrics.indexPagesTouched.sum();
+      long indexPagesRead = metrics.indexPageReads.sum();
+      start = System.nanoTime();
+      CompressedBitmap locations = getLocations(predicate);
+      int[] candidates = getCandidatePages(getPageRanges(predicate), locations);
+      long indexNanos = System.nanoTime() - start;
+      queryPlan.setActual(candidates.length, locations == null ? -1 : locations.cardinality(), indexNanos,
+          metrics.indexPagesTouched.sum() - indexPagesTouched, metrics.indexPageReads.sum() - indexPagesRead);
+      result = new ResultIterator(this, candidates, locations, predicate, parallelism, versions.pin(changeCount));
+    } finally {
+      lock.readLock().unlock();
     }
-    if (bag0 == null) {
-      return bag1.iterator();
+    long pagesRead = metrics.pageReads.sum();
+    long start = System.nanoTime();
+    long rows = 0;
+    try {
+      while (result.hasNext()) {
+        result.next();
+        rows++;
+      }
+    } catch (IllegalStateException e) {
+      // Iterators report page failures as unchecked exceptions
+      if (e.getCause() instanceof DBAppException) {
+        throw (DBAppException) e.getCause();
+      }
+      throw e;
     }
-    return andBags(bag0, bag1).iterator();
+    queryPlan.setScan(result.getPagesScanned(), metrics.pageReads.sum() - pagesRead, result.getRowsExamined(), rows,
+        System.nanoTime() - start);
+    return queryPlan;
   }
 
-  private boolean[][] getLocations(SQLTerm[] terms, String[] operators) throws DBAppException {
-    // Check if there are eny indices that can be used
-    boolean[][] fullMap = null;
-    boolean indicesFound = false;
-    for (SQLTerm term : terms) {
-      if (indices.containsKey(term._strColumnName)) {
-        fullMap = indices.get(term._strColumnName).query(term);
-        for (boolean[] arr : fullMap) {
-          for (int i = 0; i < arr.length; i++) {
-            arr[i] = true;
-          }
-        }
-        indicesFound = true;
-        break;
+  // Takes the read lock for a select, tables saved without fence keys get them first under the write lock
+  private void lockForSelect() throws DBAppException {
+    lock.readLock().lock();
+    if (minKeys == null || zoneMaps == null) {
+      lock.readLock().unlock();
+      lock.writeLock().lock();
+      try {
+        ensureKeyDirectory();
+        // Downgrade to the read lock
+        lock.readLock().lock();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  // Adds the access path and estimates of every term, in evaluation order
+  private void describeTerms(Predicate predicate, List<QueryPlan.TermPlan> termPlans) throws DBAppException {
+    if (predicate.type != Predicate.TERM) {
+      describeTerms(predicate.left, termPlans);
+      describeTerms(predicate.right, termPlans);
+      return;
+    }
+    int[] range = getPageRange(predicate.column, predicate.term._strOperator, predicate.value);
+    int scanPages = getPageRanges(predicate).cardinality();
+    String accessPath = predicate.useIndex ? "bitmap index"
+        : range[1] - range[0] < pages.size() ? "key range" : "page scan";
+    long estimatedRows = -1;
+    int pageCount = scanPages;
+    int indexPages = 0;
+    if (statistics != null) {
+      double selectivity = statistics.selectivity(predicate);
+      estimatedRows = Math.round(selectivity * statistics.getRowCount());
+      if (predicate.useIndex) {
+        pageCount = (int) Math.ceil(estimateMatchingPages(scanPages, selectivity));
+        indexPages = (int) estimateIndexPages(predicate, indices.get(predicate.column), selectivity);
       }
+    } else if (predicate.useIndex) {
+      // Without statistics a range probe may load every index page
+      indexPages = predicate.operator == Predicate.EQUAL ? 1 : indices.get(predicate.column).getPageCount();
+    }
+    termPlans.add(new QueryPlan.TermPlan(predicate.toString(), accessPath, pageCount, estimatedRows, indexPages));
+  }
+
+  // Checks if getLocations narrows the condition down with an index
+  private boolean usesIndex(Predicate predicate) {
+    switch (predicate.type) {
+      case Predicate.TERM:
+        return predicate.useIndex;
+      case Predicate.AND:
+        return usesIndex(predicate.left) || usesIndex(predicate.right);
+      default:
+        return usesIndex(predicate.left) && usesIndex(predicate.right);
+    }
+  }
+
+  // Estimated fraction of the rows in the locations of the condition
+  private double indexSelectivity(Predicate predicate) {
+    if (predicate.type == Predicate.TERM) {
+      return predicate.useIndex ? statistics.selectivity(predicate) : 1;
     }
-    if (!indicesFound) {
-      return null;
-    }
-    boolean[][] locations = new boolean[fullMap.length][];
-    for (int i = 0; i < locations.length; i++) {
-      locations[i] = new boolean[fullMap[i].length];
-      for (int j = 0; j < locations[i].length; j++) {
-        locations[i][j] = true;
-      }
-    }
-    boolean[][] currentMap = null;
-    // Reduce possible search pages using the indices
-    for (int i = 0; i < terms.length; i++) {
-      // Check if the term has a bitmap
-      SQLTerm term = terms[i];
-      if (indices.containsKey(term._strColumnName)) {
-        // And the possible locations bitmap with the bitmap from querying the index
-        Index index = indices.get(term._strColumnName);
-        //possibleLocations = possibleLocations, index.query(term);
-        boolean[][] res = index.query(term);
-        if (currentMap == null) {
-          currentMap = res;
+    double left = indexSelectivity(predicate.left);
+    double right = indexSelectivity(predicate.right);
+    // XORs of inexact locations are unions as well
+    return predicate.type == Predicate.AND ? left * right : left + right - left * right;
+  }
+
+  // Returns a superset of the locations matching the condition, or null if no index can narrow it down
+  private CompressedBitmap getLocations(Predicate predicate) throws DBAppException {
+    switch (predicate.type) {
+      case Predicate.TERM:
+        if (!predicate.useIndex) {
+          return null;
+        }
+        return indices.get(predicate.column).query(predicate.term);
+      case Predicate.AND: {
+        CompressedBitmap left = getLocations(predicate.left);
+        CompressedBitmap right = getLocations(predicate.right);
+        if (left == null || right == null) {
+          return left == null ? right : left;
+        }
+        left.and(right);
+        return left;
+      }
+      default: {
+        CompressedBitmap left = getLocations(predicate.left);
+        if (left == null) {
+          return null;
+        }
+        CompressedBitmap right = getLocations(predicate.right);
+        if (right == null) {
+          return null;
+        }
+        // Only exact bitmaps can be XORed, a union is still a superset
+        if (predicate.type == Predicate.XOR && isExact(predicate.left) && isExact(predicate.right)) {
+          left.xor(right);
         } else {
-          String operator = operators[i - 1];
-          if ("AND".equals(operator)) {
-            if (locations == null) {
-              locations = currentMap;
-            } else {
-              locations = mergeMaps(currentMap, res, operator);
-            }
-            currentMap = null;
-          } else {
-            currentMap = mergeMaps(currentMap, res, operator);
-          }
+          left.or(right);
         }
-      } else if (i > 0) {
-        String operator = operators[i - 1];
-        if (operator.equals("OR")) {
-          currentMap = fullMap;
-        } else if (operator.equals("XOR") && currentMap != null) {
-          for (boolean[] arr : currentMap) {
-            for (int j = 0; j < arr.length; j++) {
-              arr[j] = !arr[j];
-            }
-          }
+        return left;
+      }
+    }
+  }
+
+  // Chooses the access path of every term and orders the terms of AND groups by selectivity
+  private Predicate plan(Predicate predicate) throws DBAppException {
+    switch (predicate.type) {
+      case Predicate.TERM:
+        predicate.useIndex = useIndex(predicate);
+        predicate.ordinal = ordinal(predicate.column);
+        StringDictionary dictionary = predicate.ordinal < 0 ? null : getDictionaries()[predicate.ordinal];
+        if (dictionary != null) {
+          predicate.setOrder(dictionary.getOrder());
+        }
+        return predicate;
+      case Predicate.AND:
+        ArrayList<Predicate> operands = new ArrayList<>();
+        predicate.collectAnd(operands);
+        for (Predicate operand : operands) {
+          plan(operand);
+        }
+        if (statistics != null) {
+          // The most selective terms are evaluated first so rows are rejected early
+          operands.sort(Comparator.comparingDouble(statistics::selectivity));
+        }
+        Predicate result = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+          result = new Predicate(Predicate.AND, result, operands.get(i));
+        }
+        return result;
+      default:
+        return new Predicate(predicate.type, plan(predicate.left), plan(predicate.right));
+    }
+  }
+
+  // Checks if probing the index of the term is cheaper than scanning the pages left by the fence keys
+  // and zone maps, costs are counted in loaded pages
+  private boolean useIndex(Predicate term) throws DBAppException {
+    Index index = indices.get(term.column);
+    if (index == null) {
+      return false;
+    }
+    if (statistics == null) {
+      // Without statistics only != is known to match nearly every row
+      return term.operator != Predicate.NOT_EQUAL;
+    }
+    double selectivity = statistics.selectivity(term);
+    int scanPages = getPageRanges(term).cardinality();
+    return estimateIndexPages(term, index, selectivity) + estimateMatchingPages(scanPages, selectivity) < scanPages;
+  }
+
+  // Pages with at least one matching row, they still have to be loaded after the probe
+  private double estimateMatchingPages(int scanPages, double selectivity) {
+    return scanPages * (1 - Math.pow(1 - selectivity, statistics.getRowsPerPage()));
+  }
+
+  private double estimateIndexPages(Predicate term, Index index, double selectivity) {
+    switch (term.operator) {
+      case Predicate.LESS:
+      case Predicate.LESS_OR_EQUAL:
+        return Math.max(1, Math.ceil(selectivity * index.getPageCount()));
+      case Predicate.GREATER:
+      case Predicate.GREATER_OR_EQUAL:
+        // Bigger values are found by inverting the smaller ones
+        return Math.max(1, Math.ceil((1 - selectivity) * index.getPageCount()));
+      default:
+        return 1;
+    }
+  }
+
+  void analyze() throws DBAppException {
+    lock.writeLock().lock();
+    try {
+      ensureKeyDirectory();
+      statistics = new TableStatistics(this);
+      checkpoint();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Checks if the locations of the condition are exactly its matches
+  private boolean isExact(Predicate predicate) {
+    if (predicate.type == Predicate.TERM) {
+      return predicate.useIndex;
+    }
+    return isExact(predicate.left) && isExact(predicate.right);
+  }
+
+  // Returns the positions of the pages that can hold matches according to the fence keys and zone maps
+  private BitSet getPageRanges(Predicate predicate) throws DBAppException {
+    if (predicate.type == Predicate.TERM) {
+      int[] range = getPageRange(predicate.column, predicate.term._strOperator, predicate.value);
+      BitSet pageSet = new BitSet(pages.size());
+      for (int pageNum = range[0]; pageNum < range[1]; pageNum++) {
+        if (zoneMaps.get(pageNum).mayMatch(predicate)) {
+          pageSet.set(pageNum);
         }
       }
+      return pageSet;
+    }
+    BitSet pageSet = getPageRanges(predicate.left);
+    if (predicate.type == Predicate.AND) {
+      pageSet.and(getPageRanges(predicate.right));
+    } else {
+      pageSet.or(getPageRanges(predicate.right));
     }
-    // Return bitmap of positive results
-    return locations;
+    return pageSet;
   }
 
-  void createBitmapIndex(String colName) throws DBAppException {
+  void createBitmapIndex(String colName, IndexCodec codec) throws DBAppException {
+    lock.writeLock().lock();
+    try {
+      buildBitmapIndex(colName, codec);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void buildBitmapIndex(String colName, IndexCodec codec) throws DBAppException {
     // Check if an index already exists
     if (indices.containsKey(colName)) {
       throw new DBAppException("Column already indexed.");
@@ -130,33 +349,49 @@ public class Table implements Serializable {
     Index newIndex;
     switch (dataType) {
       case ("java.lang.String"):
-        newIndex = new Index<String>(colName, indexDirectoryPath);
+        newIndex = new Index<String>(colName, indexDirectoryPath, codec);
         break;
       case ("java.lang.Integer"):
-        newIndex = new Index<Integer>(colName, indexDirectoryPath);
+        newIndex = new Index<Integer>(colName, indexDirectoryPath, codec);
         break;
       case ("java.lang.Double"):
-        newIndex = new Index<Double>(colName, indexDirectoryPath);
+        newIndex = new Index<Double>(colName, indexDirectoryPath, codec);
         break;
       case ("java.lang.Boolean"):
-        newIndex = new Index<Boolean>(colName, indexDirectoryPath);
+        newIndex = new Index<Boolean>(colName, indexDirectoryPath, codec);
         break;
       case ("java.util.Date"):
-        newIndex = new Index<Date>(colName, indexDirectoryPath);
+        newIndex = new Index<Date>(colName, indexDirectoryPath, codec);
         break;
       default:
         throw new DBAppException("Invalid data type in term " + dataType);
     }
-    for (int pageNumber = 0; pageNumber < pages.size(); pageNumber++) {
-      String fileName = pages.get(pageNumber);
-      TablePage loadedPage = TablePage.loadPage(new File(fileName));
-      Comparable[] bitmap = loadedPage.getValues(colName);
-      newIndex.insertPage(bitmap, pageNumber);
+    // Visit the pages in ascending id order, so the bitmaps are built by appending
+    Integer[] order = new Integer[pages.size()];
+    for (int pageNum = 0; pageNum < order.length; pageNum++) {
+      order[pageNum] = pageNum;
+    }
+    Arrays.sort(order, Comparator.comparing(pageIds::get));
+    // The rows of every page are grouped by value in parallel, a window of pages at a time
+    int threads = MetaData.getScanThreads();
+    int window = Math.max(1, threads) * 16;
+    IndexBuilder builder = new IndexBuilder();
+    for (int from = 0; from < order.length; from += window) {
+      int[] positions = new int[Math.min(window, order.length - from)];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = order[from + i];
+      }
+      List<IndexBuilder.PageValues> values = ParallelScan.map(positions, threads,
+          pageNum -> IndexBuilder.group(loadPage(pageNum).getValues(colName)));
+      for (int i = 0; i < positions.length; i++) {
+        builder.addPage(pageIds.get(positions[i]), values.get(i));
+      }
     }
+    builder.build(newIndex);
     indices.put(colName, newIndex);
     // Mark column as indexed
     columns.get(colName).setIndexed(true);
-    writeToDisk();
+    checkpoint();
   }
 
   Table(String tableName, String keyColumn, Hashtable<String, String> colNameType) throws DBAppException {
@@ -164,6 +399,10 @@ public class Table implements Serializable {
     path = "data/" + tableName + "/";
     this.keyColumn = keyColumn;
     pages = new ArrayList<>();
+    pageIds = new ArrayList<>();
+    minKeys = new ArrayList<>();
+    maxKeys = new ArrayList<>();
+    zoneMaps = new ArrayList<>();
     columns = new Hashtable<>();
     for (String colName : colNameType.keySet()) {
       Column newColumn = new Column(name, colName, colNameType.get(colName), colName.equals(keyColumn), false);
@@ -189,6 +428,9 @@ public class Table implements Serializable {
       throw new DBAppException("Could not create indices directory");
     }
     writeToDisk();
+    log = new WriteAheadLog(path, name);
+    lock = new ReentrantReadWriteLock();
+    versions = new VersionStore();
   }
 
   static Table loadTable(String tableName, String path, HashSet<Column> cols) throws DBAppException {
@@ -204,6 +446,17 @@ public class Table implements Serializable {
       }
       // Add path
       loadedTable.path = path;
+      loadedTable.log = new WriteAheadLog(path, tableName);
+      loadedTable.lock = new ReentrantReadWriteLock();
+      loadedTable.versions = new VersionStore();
+      if (loadedTable.pageIds == null) {
+        // Pages of older tables get their position as their id, which is how their indices address them
+        loadedTable.pageIds = new ArrayList<>();
+        for (int i = 0; i < loadedTable.pages.size(); i++) {
+          loadedTable.pageIds.add(i);
+        }
+        loadedTable.nextPageId = loadedTable.pages.size();
+      }
       // Return loaded table
       return loadedTable;
     } catch (IOException | ClassNotFoundException e) {
@@ -211,292 +464,740 @@ public class Table implements Serializable {
     }
   }
 
-  void insert(Hashtable<String, Object> newRecord) throws DBAppException {
+  // Row changes return the log position their commit has to wait for
+  long insert(Hashtable<String, Object> newRecord) throws DBAppException {
     // Copy the record
-    Hashtable<String, Comparable> record = copyHashtable(newRecord);
+    Hashtable<String, Object> record = new Hashtable<>(newRecord);
     // Adding touch date
     record.put("TouchDate", new Date());
-    // Loop over the pages
-    int pageNum = 0;
-    for (; pageNum < pages.size(); pageNum++) {
-      File pageFile = new File(pages.get(pageNum));
-      // Load the page
-      TablePage loadedPage = TablePage.loadPage(pageFile);
-      // Check the first value in the page
-      if (loadedPage.peek().get(keyColumn).compareTo(record.get(keyColumn)) >= 0) {
-        break;
+    Row row = toRow(record, true);
+    lock.writeLock().lock();
+    try {
+      makeRoomInBufferPool(true);
+      changeCount++;
+      return applyLogged(WriteAheadLog.INSERT, null, record, () -> insertRecord(row));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void bulkInsert(Iterator<Hashtable<String, Object>> rows) throws DBAppException {
+    ExternalSorter sorter = new ExternalSorter(keyColumn, MetaData.getBulkLoadRunSize(), new File(path));
+    try {
+      // The rows are read, validated and sorted into runs before the table is locked
+      sortRows(rows, sorter);
+      lock.writeLock().lock();
+      try {
+        changeCount++;
+        loadRows(sorter);
+      } finally {
+        lock.writeLock().unlock();
       }
+    } finally {
+      sorter.close();
     }
-    pageNum = Math.max(0, pageNum - 1);
-    // Loop over the pages and keep pushing records until the record fits
-    for (; pageNum < pages.size(); pageNum++) {
-      File pageFile = new File(pages.get(pageNum));
-      TablePage page = TablePage.loadPage(pageFile);
-      record = page.insert(record, keyColumn);
-      if (page.isChanged()) {
-        // Update indices and write page to disk
-        updateIndices(pageNum, page);
-        page.writeToDisk();
+  }
+
+  private void sortRows(Iterator<Hashtable<String, Object>> rows, ExternalSorter sorter) throws DBAppException {
+    Date touchDate = new Date();
+    while (rows.hasNext()) {
+      Hashtable<String, Object> row = rows.next();
+      if (!MetaData.validateMask(name, row)) {
+        throw new DBAppException("Row data invalid.");
       }
-      if (record == null) {
-        break;
+      Hashtable<String, Object> record = new Hashtable<>(row);
+      record.put("TouchDate", touchDate);
+      sorter.add(record);
+    }
+    sorter.finish();
+  }
+
+  private void loadRows(ExternalSorter sorter) throws DBAppException {
+    ensureKeyDirectory();
+    // The load is not logged, start from an empty log so a crash drops the whole load
+    checkpoint();
+    int[] allPages = new int[pages.size()];
+    for (int pageNum = 0; pageNum < allPages.length; pageNum++) {
+      allPages[pageNum] = pageNum;
+    }
+    Iterator<Hashtable<String, Object>> merged = sorter.merge(new ResultIterator(this, allPages, null, null));
+    rebuildPages(merged);
+  }
+
+  // Replaces the pages with full pages holding the sorted rows and builds every index once
+  private void rebuildPages(Iterator<Hashtable<String, Object>> sortedRows) throws DBAppException {
+    ArrayList<String> newPages = new ArrayList<>();
+    ArrayList<Integer> newPageIds = new ArrayList<>();
+    ArrayList<Comparable> newMinKeys = new ArrayList<>();
+    ArrayList<Comparable> newMaxKeys = new ArrayList<>();
+    ArrayList<ZoneMap> newZoneMaps = new ArrayList<>();
+    Hashtable<String, Index> newIndices = new Hashtable<>();
+    for (String colName : indices.keySet()) {
+      newIndices.put(colName, indices.get(colName).emptyCopy());
+    }
+    TablePage page = null;
+    while (sortedRows.hasNext()) {
+      if (page == null) {
+        page = createPage();
+      }
+      // Rows arrive sorted, so every insert appends to the page
+      page.insert(toRow(sortedRows.next(), true), keyColumn);
+      if (page.isFull() || !sortedRows.hasNext()) {
+        // New pages are written right away in key order and bypass the buffer pool
+        page.writeToDisk(page.getImage(), true);
+        newPages.add(page.getPageFile().getPath());
+        newPageIds.add(page.getPageId());
+        newMinKeys.add(page.getMinKey(keyColumn));
+        newMaxKeys.add(page.getMaxKey(keyColumn));
+        newZoneMaps.add(new ZoneMap(page, getSchema()));
+        for (String colName : newIndices.keySet()) {
+          newIndices.get(colName).insertPage(page.getPageId(), page.getValues(colName));
+        }
+        page = null;
+        if (BufferPool.isMostlyDirty()) {
+          // Only writes the new index pages, the descriptor still refers to the old pages
+          checkpoint();
+        }
       }
     }
-    // If there is a record left from pushing records then create a new page for it
-    if (record != null) {
-      // Create new page
-      String fileName = path + "pages/" + new Date().getTime();
-      File newPageFile = new File(fileName);
-      TablePage newPage = TablePage.createPage(newPageFile);
+    ArrayList<String> oldPages = pages;
+    ArrayList<Integer> oldPageIds = pageIds;
+    Hashtable<String, Index> oldIndices = indices;
+    pages = newPages;
+    pageIds = newPageIds;
+    pagePositions = null;
+    minKeys = newMinKeys;
+    maxKeys = newMaxKeys;
+    zoneMaps = newZoneMaps;
+    indices = newIndices;
+    // The new pages become visible with the descriptor written by the checkpoint
+    checkpoint();
+    for (int i = 0; i < oldPages.size(); i++) {
+      // Open snapshots still read the old pages, the files are deleted once they are released
+      versions.retire(oldPageIds.get(i), new File(oldPages.get(i)), changeCount);
+    }
+    // Snapshots got their locations when they were taken, so the old indices are not needed anymore
+    for (Index index : oldIndices.values()) {
+      index.drop();
+    }
+  }
+
+  private interface RowChange {
+    void apply() throws DBAppException;
+  }
+
+  // Appends the log record before the change is applied, so a change that can't be logged leaves the table
+  // as it was. Returns the log position the commit has to wait for
+  private long applyLogged(byte type, String keyCol, Hashtable<String, Object> row, RowChange change)
+      throws DBAppException {
+    byte[] entry = WriteAheadLog.encode(type, keyCol, row);
+    log.append(entry);
+    loggedChange = entry;
+    try {
+      change.apply();
+    } finally {
+      loggedChange = null;
+    }
+    return log.position();
+  }
+
+  private void insertRecord(Row record) throws DBAppException {
+    // Find the page the record belongs to using the fence keys
+    int pageNum = findPage(record.get(ordinal(keyColumn)));
+    if (pages.isEmpty()) {
+      // Create the first page of the table
+      TablePage newPage = createPage();
       newPage.insert(record, keyColumn);
-      // Add the new fileName to the pages list
-      pages.add(fileName);
-      newPage.writeToDisk();
-      // Adding page to index
-      insertToIndices(newPage, pages.size() - 1);
+      addPage(0, newPage);
+      return;
+    }
+    TablePage page = loadPage(pageNum);
+    Hashtable<String, Comparable[]> oldValues = getIndexedValues(page);
+    versions.preserve(page, changeCount);
+    if (page.isFull()) {
+      // Insert before splitting so neither half is left empty, even when a page holds a single row
+      page.insert(record, keyColumn);
+      TablePage newPage = createPage();
+      page.split(newPage);
+      addPage(pageNum + 1, newPage);
+      zoneMaps.set(pageNum, new ZoneMap(page, getSchema()));
+    } else {
+      page.insert(record, keyColumn);
+      zoneMaps.get(pageNum).add(record, getSchema());
+    }
+    // Update indices, fence keys and write page to disk
+    updateIndices(pageNum, oldValues, page);
+    updateKeys(pageNum, page);
+    BufferPool.markDirty(page);
+  }
+
+  private TablePage createPage() throws DBAppException {
+    // Page ids are never reused, the id is also the name of the page file
+    int pageId = nextPageId++;
+    return TablePage.createPage(new File(path + "pages/" + pageId), getSchema(), pageId);
+  }
+
+  private void addPage(int pageNum, TablePage newPage) throws DBAppException {
+    pages.add(pageNum, newPage.getPageFile().getPath());
+    pageIds.add(pageNum, newPage.getPageId());
+    pagePositions = null;
+    minKeys.add(pageNum, newPage.getMinKey(keyColumn));
+    maxKeys.add(pageNum, newPage.getMaxKey(keyColumn));
+    zoneMaps.add(pageNum, new ZoneMap(newPage, getSchema()));
+    BufferPool.markDirty(newPage);
+    // Adding page to index
+    insertToIndices(newPage);
+  }
+
+  long delete(Hashtable<String, Object> mask, int parallelism) throws DBAppException {
+    lock.writeLock().lock();
+    try {
+      changeCount++;
+      return applyLogged(WriteAheadLog.DELETE, null, mask, () -> deleteRecords(mask, parallelism));
+    } finally {
+      lock.writeLock().unlock();
     }
-    writeToDisk();
   }
 
-  void delete(Hashtable<String, Object> mask) throws DBAppException {
+  private void deleteRecords(Hashtable<String, Object> mask, int parallelism) throws DBAppException {
     // Create a query to get possible placements of the records
-    boolean[][] locations = getLocationsFromMask(mask);
-    // Copy the record
-    Hashtable<String, Comparable> record = copyHashtable(mask);
-    // Looping through the pages
-    for (int pageNum = 0; pageNum < pages.size(); pageNum++) {
-      if (skipPage(locations, pageNum)) {
-        //continue;
+    CompressedBitmap locations = getLocationsFromMask(mask);
+    Row record = toRow(mask, false);
+    // Only the pages that can hold the key are visited when the key is given
+    int[] range = getPageRange(keyColumn, "=", (Comparable) mask.get(keyColumn));
+    int[] candidates = new int[Math.max(0, range[1] - range[0])];
+    int count = 0;
+    for (int pageNum = range[0]; pageNum < range[1]; pageNum++) {
+      if (!skipPage(locations, pageNum) && zoneMaps.get(pageNum).mayContain(mask)) {
+        candidates[count++] = pageNum;
       }
-      File pageFile = new File(pages.get(pageNum));
-      TablePage page = TablePage.loadPage(pageFile);
-      page.delete(record);
-      pageNum = writePageToDisk(pageNum, page);
     }
-    writeToDisk();
+    changePages(Arrays.copyOf(candidates, count), parallelism, true, pageNum -> {
+      TablePage page = loadPage(pageNum);
+      return page.containsMatch(record) ? page : null;
+    }, page -> page.delete(record));
+  }
+
+  private boolean skipPage(CompressedBitmap locations, int pageNum) {
+    return locations != null && !locations.hasPage(pageIds.get(pageNum));
+  }
+
+  private interface PageChange {
+    void apply(TablePage page) throws DBAppException;
   }
 
-  private boolean skipPage(boolean[][] locations, int pageNum) {
-    if (locations != null) {
-      for (boolean bit : locations[pageNum]) {
-        if (bit) {
-          return true;
+  // Loads the candidate pages in windows, in parallel when asked to, and applies the change to the pages
+  // kept by the filter one at a time. Positions are corrected for pages that were emptied and removed. The
+  // pages changed so far may be checkpointed between windows if the change can be redone over them
+  private void changePages(int[] candidates, int parallelism, boolean changeCanBeRedone,
+                           ParallelScan.PageTask<TablePage> filter, PageChange change) throws DBAppException {
+    // Only a window of loaded pages is held at once
+    int window = Math.max(1, parallelism) * 4;
+    int removed = 0;
+    for (int from = 0; from < candidates.length; from += window) {
+      makeRoomInBufferPool(changeCanBeRedone);
+      int[] positions = Arrays.copyOfRange(candidates, from, Math.min(candidates.length, from + window));
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] -= removed;
+      }
+      List<TablePage> matches = ParallelScan.map(positions, parallelism, filter);
+      int removedBefore = removed;
+      for (int i = 0; i < positions.length; i++) {
+        TablePage page = matches.get(i);
+        if (page == null) {
+          continue;
+        }
+        int pageNum = positions[i] - (removed - removedBefore);
+        Hashtable<String, Comparable[]> oldValues = getIndexedValues(page);
+        versions.preserve(page, changeCount);
+        change.apply(page);
+        if (writePageToDisk(pageNum, oldValues, page) < pageNum) {
+          removed++;
         }
       }
     }
-    return false;
   }
 
-  void update(String keyCol, Hashtable<String, Object> mask) throws DBAppException {
+  long update(String keyCol, Hashtable<String, Object> mask, int parallelism) throws DBAppException {
+    lock.writeLock().lock();
+    try {
+      changeCount++;
+      return applyLogged(WriteAheadLog.UPDATE, keyCol, mask, () -> updateRecords(keyCol, mask, parallelism));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void updateRecords(String keyCol, Hashtable<String, Object> mask, int parallelism)
+      throws DBAppException {
     // Create a query to get possible placements of the records
     Hashtable<String, Object> queryMask = new Hashtable<>();
     queryMask.put(keyCol, mask.get(keyCol));
-    boolean[][] locations = getLocationsFromMask(queryMask);
-    Hashtable<String, Comparable> record = copyHashtable(mask);
-    HashSet<Hashtable<String, Object>> overflow = new HashSet<>();
-    // Loop over pages
-    for (int pageNum = 0; pageNum < pages.size(); pageNum++) {
-      if (skipPage(locations, pageNum)) {
-        //continue;
+    CompressedBitmap locations = getLocationsFromMask(queryMask);
+    Row record = toRow(mask, true);
+    ArrayList<Row> overflow = new ArrayList<>();
+    int[] range = getPageRange(keyCol, "=", (Comparable) mask.get(keyCol));
+    int[] candidates = new int[Math.max(0, range[1] - range[0])];
+    int count = 0;
+    for (int pageNum = range[0]; pageNum < range[1]; pageNum++) {
+      if (!skipPage(locations, pageNum)) {
+        candidates[count++] = pageNum;
       }
-      File pageFile = new File(pages.get(pageNum));
-      TablePage loadedPage = TablePage.loadPage(pageFile);
+    }
+    // Rows whose key changes are held back until they are inserted again
+    boolean keyChanges = !isKey(keyCol) && mask.containsKey(keyColumn);
+    changePages(Arrays.copyOf(candidates, count), parallelism, !keyChanges, pageNum -> {
+      TablePage page = loadPage(pageNum);
+      return page.contains(keyCol, mask.get(keyCol)) ? page : null;
+    }, page -> {
       // Update records in page and get overflow unsorted records
-      overflow.addAll(loadedPage.update(record, keyCol, this.keyColumn));
-      // Check if the page changed
-      pageNum = writePageToDisk(pageNum, loadedPage);
+      overflow.addAll(page.update(record, keyCol, this.keyColumn));
+    });
+    // Add overflow records, they keep their touch date so the log can redo the update
+    for (Row row : overflow) {
+      insertRecord(row);
     }
-    // Add overflow records
-    for (Hashtable<String, Object> row : overflow) {
-      insert(row);
+  }
+
+  // Called without holding the table lock, so concurrent commits share a sync of the log
+  void commit(long position) throws DBAppException {
+    log.commit(position);
+    // Pages are written lazily, once the buffer pool fills up with dirty pages or the log grows long
+    if (BufferPool.isMostlyDirty()) {
+      // Writers of the other tables aren't held up, their pages are written in the background
+      checkpoint();
+      MetaData.flushInBackground();
+    } else if (log.size() >= MetaData.getCheckpointLogSize()) {
+      checkpoint();
     }
-    writeToDisk();
   }
 
-  private int writePageToDisk(int pageNum, TablePage page) throws DBAppException {
+  // Readers don't change pages, so they can go on while the pages are written
+  void checkpoint() throws DBAppException {
+    lock.readLock().lock();
+    try {
+      writeCheckpoint();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Checkpoints the dirty pages of the table unless it is in the middle of a change, returns whether it did
+  boolean tryCheckpoint() throws DBAppException {
+    // The thread making the change could take the read lock as well
+    if (lock.isWriteLockedByCurrentThread() || !lock.readLock().tryLock()) {
+      return false;
+    }
+    try {
+      if (BufferPool.getDirtyPages(new File(path)).isEmpty()) {
+        return false;
+      }
+      writeCheckpoint();
+      return true;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void writeCheckpoint() throws DBAppException {
+    synchronized (this) {
+      List<Page> dirtyPages = BufferPool.getDirtyPages(new File(path));
+      log.checkpoint(dirtyPages, new File(path + name), getDescriptorImage());
+      BufferPool.removeEmptyPages(dirtyPages);
+      if (loggedChange != null && lock.isWriteLockedByCurrentThread()) {
+        // The rest of the change is only in memory, it is redone over the pages just written
+        log.append(loggedChange);
+      }
+    }
+  }
+
+  // The buffer pool only evicts clean pages, once it overflows with dirty pages the tables owning them are
+  // checkpointed before more pages are loaded. A change of this table only writes its own pages where its
+  // log record can redo it over the written pages
+  private void makeRoomInBufferPool(boolean changeCanBeRedone) throws DBAppException {
+    if (!BufferPool.isOverflowing()) {
+      return;
+    }
+    // A checkpoint while recovering would truncate the log before its last entries are redone
+    if (changeCanBeRedone && !recovering && lock.isWriteLockedByCurrentThread()) {
+      writeCheckpoint();
+    }
+    MetaData.checkpointIdleTables();
+  }
+
+  // Releases the log, changes that weren't checkpointed are redone when the table is loaded again
+  void close() throws DBAppException {
+    log.close();
+  }
+
+  // Forgets a table whose recovery failed. The pages the redo changed are dropped without being written and
+  // the log is left as it is
+  void abandon() throws DBAppException {
+    BufferPool.discardDirectory(new File(path));
+    log.close();
+  }
+
+  // Redoes the row changes logged after the last checkpoint
+  void recover() throws DBAppException {
+    lock.writeLock().lock();
+    recovering = true;
+    try {
+      List<WriteAheadLog.Entry> entries = log.read();
+      for (WriteAheadLog.Entry entry : entries) {
+        switch (entry.type) {
+          case WriteAheadLog.INSERT:
+            insertRecord(toRow(entry.row, true));
+            break;
+          case WriteAheadLog.UPDATE:
+            updateRecords(entry.keyCol, entry.row, 1);
+            break;
+          default:
+            deleteRecords(entry.row, 1);
+        }
+      }
+      if (!entries.isEmpty()) {
+        checkpoint();
+      }
+    } finally {
+      recovering = false;
+      lock.writeLock().unlock();
+    }
+  }
+
+  private int writePageToDisk(int pageNum, Hashtable<String, Comparable[]> oldValues, TablePage page)
+      throws DBAppException {
     if (page.isChanged()) {
       // Check if the page is empty
-      page.writeToDisk();
+      BufferPool.markDirty(page);
       if (page.isEmpty()) {
         // Remove the page and move back the pointer
+        removeFromIndices(pageIds.get(pageNum), oldValues);
         pages.remove(pageNum);
-        removeFromIndices(pageNum--);
-        return pageNum;
+        pageIds.remove(pageNum);
+        pagePositions = null;
+        minKeys.remove(pageNum);
+        maxKeys.remove(pageNum);
+        zoneMaps.remove(pageNum);
+        return pageNum - 1;
       }
-      updateIndices(pageNum, page);
+      updateIndices(pageNum, oldValues, page);
+      updateKeys(pageNum, page);
+      zoneMaps.set(pageNum, new ZoneMap(page, getSchema()));
     }
     return pageNum;
   }
 
   // private instance methods
-  private void updateIndices(int pageNumber, TablePage page) throws DBAppException {
+  private Hashtable<String, Comparable[]> getIndexedValues(TablePage page) {
+    Hashtable<String, Comparable[]> values = new Hashtable<>();
+    for (String colName : indices.keySet()) {
+      values.put(colName, page.getValues(colName));
+    }
+    return values;
+  }
+
+  private void updateIndices(int pageNumber, Hashtable<String, Comparable[]> oldValues, TablePage page)
+      throws DBAppException {
     for (Column column : columns.values()) {
       if (column.isIndexed()) {
         // Get the index for that specific column
         Index index = indices.get(column.getName());
-        index.updatePage(pageNumber, page.getValues(column.getName()));
+        index.updatePage(pageIds.get(pageNumber), oldValues.get(column.getName()), page.getValues(column.getName()));
+      }
+    }
+  }
+
+  private void updateKeys(int pageNumber, TablePage page) {
+    minKeys.set(pageNumber, page.getMinKey(keyColumn));
+    maxKeys.set(pageNumber, page.getMaxKey(keyColumn));
+  }
+
+  private void ensureKeyDirectory() throws DBAppException {
+    // Build the fence keys and zone maps of tables saved without them
+    if (minKeys == null || zoneMaps == null) {
+      buildKeyDirectory();
+    }
+  }
+
+  private void buildKeyDirectory() throws DBAppException {
+    minKeys = new ArrayList<>(pages.size());
+    maxKeys = new ArrayList<>(pages.size());
+    zoneMaps = new ArrayList<>(pages.size());
+    for (int pageNum = 0; pageNum < pages.size(); pageNum++) {
+      TablePage page = loadPage(pageNum);
+      Hashtable<String, Comparable[]> oldValues = getIndexedValues(page);
+      page.sort(keyColumn);
+      if (page.isChanged()) {
+        // The bits of the indices follow the rows to their new positions
+        updateIndices(pageNum, oldValues, page);
+        BufferPool.markDirty(page);
+      }
+      minKeys.add(page.getMinKey(keyColumn));
+      maxKeys.add(page.getMaxKey(keyColumn));
+      zoneMaps.add(new ZoneMap(page, getSchema()));
+    }
+    for (int pageNum = 1; pageNum < pages.size(); pageNum++) {
+      if (maxKeys.get(pageNum - 1).compareTo(minKeys.get(pageNum)) > 0) {
+        // Older tables pushed overflow rows into the next page, so their pages overlap
+        rewriteInKeyOrder();
+        return;
+      }
+    }
+  }
+
+  // Builds the fence keys and zone maps again, pages that overlap are rewritten in key order
+  void rebuildKeyDirectory() throws DBAppException {
+    lock.writeLock().lock();
+    try {
+      buildKeyDirectory();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Replaces the pages with pages holding all rows in key order and builds every index again
+  private void rewriteInKeyOrder() throws DBAppException {
+    changeCount++;
+    ExternalSorter sorter = new ExternalSorter(keyColumn, MetaData.getBulkLoadRunSize(), new File(path));
+    try {
+      int[] allPages = new int[pages.size()];
+      for (int pageNum = 0; pageNum < allPages.length; pageNum++) {
+        allPages[pageNum] = pageNum;
+      }
+      Iterator<Hashtable<String, Object>> rows = new ResultIterator(this, allPages, null, null);
+      while (rows.hasNext()) {
+        sorter.add(rows.next());
+      }
+      sorter.finish();
+      // Checkpoints during the rewrite must not save fence keys of the overlapping pages
+      minKeys = null;
+      maxKeys = null;
+      zoneMaps = null;
+      rebuildPages(sorter.merge(Collections.emptyIterator()));
+    } finally {
+      sorter.close();
+    }
+  }
+
+  private int findPage(Comparable key) throws DBAppException {
+    ensureKeyDirectory();
+    // Last page with a minimum key not bigger than the key
+    return Math.max(0, lastPageWithMin(key, false));
+  }
+
+  // Returns the [from, to) range of pages that can hold rows matching the condition
+  private int[] getPageRange(String colName, String operator, Comparable value) throws DBAppException {
+    ensureKeyDirectory();
+    if (value == null || !isKey(colName)) {
+      return new int[]{0, pages.size()};
+    }
+    switch (operator) {
+      case ("="):
+        return new int[]{firstPageWithMax(value, false), lastPageWithMin(value, false) + 1};
+      case ("<"):
+        return new int[]{0, lastPageWithMin(value, true) + 1};
+      case ("<="):
+        return new int[]{0, lastPageWithMin(value, false) + 1};
+      case (">"):
+        return new int[]{firstPageWithMax(value, true), pages.size()};
+      case (">="):
+        return new int[]{firstPageWithMax(value, false), pages.size()};
+      default:
+        return new int[]{0, pages.size()};
+    }
+  }
+
+  private int firstPageWithMax(Comparable value, boolean strict) {
+    int low = 0;
+    int high = maxKeys.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int comparison = maxKeys.get(mid).compareTo(value);
+      if (comparison > 0 || (!strict && comparison == 0)) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private int lastPageWithMin(Comparable value, boolean strict) {
+    int low = 0;
+    int high = minKeys.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int comparison = minKeys.get(mid).compareTo(value);
+      if (comparison < 0 || (!strict && comparison == 0)) {
+        low = mid + 1;
+      } else {
+        high = mid;
       }
     }
+    return low - 1;
   }
 
-  private void removeFromIndices(int pageNumber) throws DBAppException {
+  private void removeFromIndices(int pageId, Hashtable<String, Comparable[]> oldValues) throws DBAppException {
     for (Column column : columns.values()) {
       if (column.isIndexed()) {
         // Get the index for that specific column
         Index index = indices.get(column.getName());
-        index.deletePage(pageNumber);
+        index.deletePage(pageId, oldValues.get(column.getName()));
       }
     }
   }
 
-  private void insertToIndices(TablePage newPage, int pageNumber) throws DBAppException {
+  private void insertToIndices(TablePage newPage) throws DBAppException {
     for (Column column : columns.values()) {
       if (column.isIndexed()) {
         // Get the index for that specific column
         Index index = indices.get(column.getName());
-        index.insertPage(newPage.getValues(column.getName()), pageNumber);
+        index.insertPage(newPage.getPageId(), newPage.getValues(column.getName()));
       }
     }
   }
 
-  private Hashtable<String, Comparable> copyHashtable(Hashtable<String, Object> table) {
-    Hashtable<String, Comparable> copy = new Hashtable<>(table.size());
-    for (String key : table.keySet()) {
-      copy.put(key, (Comparable) table.get(key));
+  // Rows are only built from validated records, masks may name columns the table doesn't have
+  // Strings get their dictionary codes, only stored values add new strings to the dictionaries
+  private Row toRow(Map<String, ?> record, boolean addStrings) throws DBAppException {
+    Column[] columnOrder = getSchema();
+    for (String colName : record.keySet()) {
+      if (ordinal(colName) < 0) {
+        throw new DBAppException("The table " + name + " has no column " + colName + ".");
+      }
+    }
+    Row row = Row.fromHashtable(record, columnOrder, getRowTypes());
+    StringDictionary[] dictionaries = getDictionaries();
+    for (int i = 0; i < columnOrder.length; i++) {
+      if (dictionaries[i] != null && row.isPresent(i)) {
+        String value = row.getString(i);
+        row.setString(i, value, addStrings ? dictionaries[i].encode(value) : dictionaries[i].lookup(value));
+      }
+    }
+    return row;
+  }
+
+  // Position of the column in the rows, or -1 if the table doesn't have it
+  // Reads the key flag of the resolved schema
+  private boolean isKey(String colName) throws DBAppException {
+    TableSchema tableSchema = MetaData.getSchema(name);
+    int column = tableSchema.indexOf(colName);
+    return column >= 0 && tableSchema.isKey(column);
+  }
+
+  private int ordinal(String colName) {
+    Column[] columnOrder = getSchema();
+    for (int i = 0; i < columnOrder.length; i++) {
+      if (columnOrder[i].getName().equals(colName)) {
+        return i;
+      }
     }
-    return copy;
+    return -1;
   }
 
   private void writeToDisk() throws DBAppException {
+    Page.writeImage(new File(path + name), getDescriptorImage(), false);
+  }
+
+  private byte[] getDescriptorImage() throws DBAppException {
     try {
-      ObjectOutputStream writer = new ObjectOutputStream(new FileOutputStream(path + name));
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream writer = new ObjectOutputStream(bytes);
       writer.writeObject(this);
       writer.close();
+      return bytes.toByteArray();
     } catch (IOException e) {
       throw new DBAppException("Could not save table to memory: " + e.getMessage());
     }
   }
 
-  private HashSet<Hashtable<String, Comparable>> xorBags(HashSet<Hashtable<String, Comparable>> bag1, HashSet<Hashtable<String, Comparable>> bag2) {
-    HashSet<Hashtable<String, Comparable>> intersection = orBags(bag1, bag2);
-    HashSet<Hashtable<String, Comparable>> symDifference = andBags(bag1, bag2);
-    for (Object obj : intersection) {
-      symDifference.remove(obj);
+  @Override
+  public String toString() {
+    return name + "," + path;
+  }
+
+  Column[] getSchema() {
+    Column[] columnOrder = schema;
+    if (columnOrder == null) {
+      // Columns are laid out in pages ordered by name
+      columnOrder = columns.values().toArray(new Column[0]);
+      Arrays.sort(columnOrder, Comparator.comparing(Column::getName));
+      schema = columnOrder;
     }
-    return symDifference;
+    return columnOrder;
   }
 
-  private HashSet<Hashtable<String, Comparable>> andBags(HashSet<Hashtable<String, Comparable>> bag1, HashSet<Hashtable<String, Comparable>> bag2) {
-    HashSet<Hashtable<String, Comparable>> interSection = new HashSet<>();
-    for (Hashtable<String, Comparable> obj : bag2) {
-      if (bag1.contains(obj)) {
-        interSection.add(obj);
-      }
+  StringDictionary[] getDictionaries() throws DBAppException {
+    return StringDictionary.forTable(new File(path), getSchema());
+  }
+
+  byte[] getRowTypes() {
+    byte[] types = rowTypes;
+    if (types == null) {
+      types = Row.getTypes(getSchema());
+      rowTypes = types;
     }
-    return interSection;
+    return types;
   }
 
-  private HashSet<Hashtable<String, Comparable>> orBags(HashSet<Hashtable<String, Comparable>> bag1, HashSet<Hashtable<String, Comparable>> bag2) {
-    HashSet<Hashtable<String, Comparable>> union = new HashSet<>(bag2);
-    union.addAll(bag1);
-    return union;
+  ArrayList<String> getPages() {
+    return pages;
   }
 
-  private HashSet<Hashtable<String, Comparable>> executeQuery(SQLTerm term, boolean[][] locations) throws DBAppException {
-    // Loop over pages
-    HashSet<Hashtable<String, Comparable>> output = new HashSet<>();
-    for (int i = 0; i < pages.size(); i++) {
-      // Check if the page contains possible answers
-      if (locations != null) {
-        boolean exists = false;
-        for (boolean bit : locations[i]) {
-          if (bit) {
-            exists = true;
-            break;
-          }
-        }
-        if (!exists) {
-          continue;
-        }
-      }
-      String fileName = pages.get(i);
-      TablePage loadedPage = TablePage.loadPage(new File(fileName));
-      HashSet<Hashtable<String, Comparable>> set;
-      if (locations == null) {
-        set = loadedPage.getAll();
-      } else {
-        set = loadedPage.getAll(locations[i]);
-      }
-      for (Hashtable<String, Comparable> record : set) {
-        switch (term._strOperator) {
-          case "=":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) == 0) {
-              output.add(record);
-            }
-            break;
-          case "!=":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) != 0) {
-              output.add(record);
-            }
-            break;
-          case "<":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) < 0) {
-              output.add(record);
-            }
-            break;
-          case "<=":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) <= 0) {
-              output.add(record);
-            }
-            break;
-          case ">":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) > 0) {
-              output.add(record);
-            }
-            break;
-          case ">=":
-            if ((record.get(term._strColumnName)).compareTo(term._objValue) >= 0) {
-              output.add(record);
-            }
-            break;
-          default:
-            throw new DBAppException("Invalid term operator: " + term._strOperator);
-        }
+  ArrayList<Integer> getPageIds() {
+    return pageIds;
+  }
+
+  // Positions of the pages in the page set that can hold rows in the locations
+  private int[] getCandidatePages(BitSet pageSet, CompressedBitmap locations) {
+    if (locations == null) {
+      return pageSet.stream().toArray();
+    }
+    int[] candidates = locations.getPages();
+    int count = 0;
+    for (int pageId : candidates) {
+      Integer position = getPagePositions().get(pageId);
+      if (position != null && pageSet.get(position)) {
+        candidates[count++] = position;
       }
     }
-    return output;
+    candidates = Arrays.copyOf(candidates, count);
+    Arrays.sort(candidates);
+    return candidates;
   }
 
-  private boolean[][] mergeMaps(boolean[][] map1, boolean[][] map2, String operator) {
-    boolean[][] output = new boolean[map1.length][];
-    for (int i = 0; i < output.length; i++) {
-      output[i] = new boolean[map1[i].length];
-      for (int j = 0; j < output[i].length; j++) {
-        switch (operator) {
-          case ("OR"):
-            output[i][j] = map1[i][j] | map2[i][j];
-            break;
-          case ("XOR"):
-            output[i][j] = map1[i][j] ^ map2[i][j];
-            break;
-          default:
-            output[i][j] = map1[i][j] & map2[i][j];
-        }
+  private HashMap<Integer, Integer> getPagePositions() {
+    HashMap<Integer, Integer> positions = pagePositions;
+    if (positions == null) {
+      // Readers may build the map at the same time, it is only published once complete
+      positions = new HashMap<>(pageIds.size() * 2);
+      for (int i = 0; i < pageIds.size(); i++) {
+        positions.put(pageIds.get(i), i);
       }
+      pagePositions = positions;
     }
-    return output;
+    return positions;
   }
 
-  @Override
-  public String toString() {
-    return name + "," + path;
+  // Current position of the page, or null if the page was removed
+  Integer getPagePosition(int pageId) {
+    return getPagePositions().get(pageId);
+  }
+
+  ReentrantReadWriteLock getLock() {
+    return lock;
+  }
+
+  TablePage loadPage(int pageNum) throws DBAppException {
+    makeRoomInBufferPool(false);
+    return BufferPool.getTablePage(new File(pages.get(pageNum)), pageIds.get(pageNum), getSchema());
   }
 
   HashSet<Column> getColSet() {
     return new HashSet<>(columns.values());
   }
 
-  private boolean[][] getLocationsFromMask(Hashtable<String, Object> mask) throws DBAppException {
+  private CompressedBitmap getLocationsFromMask(Hashtable<String, Object> mask) throws DBAppException {
     SQLTerm[] terms = new SQLTerm[mask.size()];
     String[] operators = new String[mask.size() - 1];
     int index = 0;
@@ -509,6 +1210,6 @@ public class Table implements Serializable {
         operators[index - 1] = "AND";
       }
     }
-    return getLocations(terms, operators);
+    return getLocations(plan(Predicate.compile(terms, operators)));
   }
 }
@@ -1,124 +1,562 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
-class TablePage implements Serializable {
-  private Vector<Hashtable<String, Comparable>> records;
+class TablePage implements Page {
+  // Page header: magic, max size, row count and column count
+  static final int MAGIC = 0x54504732;
+  // Columnar pages follow the header with the offset of every column in the page
+  static final int COLUMNAR_MAGIC = 0x54504332;
+  // Pages written before strings were stored as codes of the table dictionaries
+  private static final int MAGIC_V1 = 0x54504731;
+  private static final int COLUMNAR_MAGIC_V1 = 0x54504331;
+  private static final int HEADER_SIZE = 16;
+  // Null until the rows of a columnar page are read one by one or changed
+  private volatile ArrayList<Row> records;
+  private int rowCount;
   private int maxSize;
-  transient private File pageFile;
-  transient private boolean changed;
+  private File pageFile;
+  private int pageId;
+  private Column[] schema;
+  private byte[] types;
+  private boolean changed;
+  private Metrics.TableMetrics metrics;
+  private boolean columnar;
+  // Columns of a columnar page, decoded from the image or built from the rows once a select needs them
+  private ColumnVector[] vectors;
+  // Image of a columnar page as it was read, and the position of every column in it
+  private byte[] image;
+  private int[] columnOffsets;
+  // Dictionaries the strings of a page read from disk refer to, null if the page was written before them
+  private StringDictionary[] dictionaries;
 
   // static methods
-  static TablePage loadPage(File pageFile) throws DBAppException {
-    try {
-      ObjectInputStream reader = new ObjectInputStream(new FileInputStream(pageFile));
-      TablePage loadedPage = (TablePage) reader.readObject();
-      reader.close();
+  static TablePage loadPage(File pageFile, int pageId, Column[] schema) throws DBAppException {
+    try (FileChannel channel = FileChannel.open(pageFile.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new DBAppException("Could not load page: unexpected end of file");
+        }
+      }
+      buffer.flip();
+      int magic = buffer.remaining() < HEADER_SIZE ? 0 : buffer.getInt();
+      if (magic != MAGIC && magic != COLUMNAR_MAGIC && magic != MAGIC_V1 && magic != COLUMNAR_MAGIC_V1) {
+        throw new DBAppException("Could not load page: " + pageFile.getName()
+            + " is not in the binary page format, run PageMigrator first");
+      }
+      TablePage loadedPage = new TablePage();
+      loadedPage.maxSize = buffer.getInt();
+      int rowCount = buffer.getInt();
+      if (buffer.getInt() != schema.length) {
+        throw new DBAppException("Could not load page: column count does not match the table schema");
+      }
+      loadedPage.types = Row.getTypes(schema);
+      loadedPage.rowCount = rowCount;
+      if (magic == MAGIC || magic == COLUMNAR_MAGIC) {
+        loadedPage.dictionaries = StringDictionary.forTable(pageFile.getParentFile().getParentFile(), schema);
+      }
+      if (magic == COLUMNAR_MAGIC || magic == COLUMNAR_MAGIC_V1) {
+        // Columns are decoded when they are first needed
+        loadedPage.columnar = true;
+        loadedPage.image = buffer.array();
+        loadedPage.columnOffsets = new int[schema.length];
+        buffer.asIntBuffer().get(loadedPage.columnOffsets);
+      } else {
+        ArrayList<Row> rows = new ArrayList<>(loadedPage.maxSize);
+        for (int i = 0; i < rowCount; i++) {
+          rows.add(readRecord(buffer, loadedPage.types, loadedPage.dictionaries));
+        }
+        loadedPage.records = rows;
+      }
       loadedPage.pageFile = pageFile;
+      loadedPage.pageId = pageId;
+      loadedPage.schema = schema;
       loadedPage.changed = false;
+      loadedPage.getMetrics().pageReads.increment();
+      loadedPage.getMetrics().pageBytesRead.add(buffer.capacity());
       return loadedPage;
-    } catch (IOException | ClassNotFoundException e) {
+    } catch (IOException e) {
       throw new DBAppException("Could not load page: " + e.getMessage());
     }
   }
 
-  static TablePage createPage(File pageFile) throws DBAppException {
+  static TablePage createPage(File pageFile, Column[] schema, int pageId) throws DBAppException {
+    return createPage(pageFile, schema, pageId, getSizeFromProperties(), MetaData.isColumnarLayout());
+  }
+
+  static TablePage createPage(File pageFile, Column[] schema, int pageId, int maxSize, boolean columnar) {
     TablePage newPage = new TablePage();
-    newPage.maxSize = getSizeFromProperties();
-    newPage.records = new Vector<>(newPage.maxSize);
+    newPage.columnar = columnar;
+    newPage.maxSize = maxSize;
+    newPage.records = new ArrayList<>(newPage.maxSize);
     newPage.pageFile = pageFile;
+    newPage.pageId = pageId;
+    newPage.schema = schema;
+    newPage.types = Row.getTypes(schema);
     newPage.changed = false;
     return newPage;
   }
 
+  private static Row readRecord(ByteBuffer buffer, byte[] types, StringDictionary[] dictionaries) {
+    Row record = new Row(types);
+    // Read the presence bitmap of the row
+    byte[] present = new byte[(types.length + 7) / 8];
+    buffer.get(present);
+    for (int i = 0; i < types.length; i++) {
+      boolean isPresent = (present[i / 8] & (1 << (i % 8))) != 0;
+      long bits;
+      switch (types[i]) {
+        case Row.INTEGER:
+          bits = buffer.getInt();
+          break;
+        case Row.DOUBLE:
+        case Row.DATE:
+          bits = buffer.getLong();
+          break;
+        case Row.BOOLEAN:
+          bits = buffer.get() != 0 ? 1 : 0;
+          break;
+        default:
+          // Strings are dictionary codes, or their negated length plus one followed by the string. Strings
+          // of pages without dictionaries are length prefixed
+          int code = buffer.getInt();
+          if (dictionaries != null && code >= 0) {
+            if (isPresent) {
+              record.setString(i, dictionaries[i].decode(code), code);
+            }
+            continue;
+          }
+          int length = dictionaries != null ? -code - 1 : code;
+          if (isPresent) {
+            record.setString(i, new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+          }
+          buffer.position(buffer.position() + length);
+          continue;
+      }
+      if (isPresent) {
+        record.setBits(i, bits);
+      }
+    }
+    return record;
+  }
+
+  private static int writeRecord(ByteBuffer buffer, Row record, byte[] types, int[] codes, byte[][] strings,
+                                 int stringIndex) {
+    byte[] present = new byte[(types.length + 7) / 8];
+    for (int i = 0; i < types.length; i++) {
+      if (record.isPresent(i)) {
+        present[i / 8] |= 1 << (i % 8);
+      }
+    }
+    buffer.put(present);
+    for (int i = 0; i < types.length; i++) {
+      // Absent values keep zero bits
+      switch (types[i]) {
+        case Row.INTEGER:
+          buffer.putInt((int) record.getBits(i));
+          break;
+        case Row.DOUBLE:
+        case Row.DATE:
+          buffer.putLong(record.getBits(i));
+          break;
+        case Row.BOOLEAN:
+          buffer.put((byte) record.getBits(i));
+          break;
+        default:
+          buffer.putInt(codes[stringIndex]);
+          if (strings[stringIndex] != null) {
+            buffer.put(strings[stringIndex]);
+          }
+          stringIndex++;
+      }
+    }
+    return stringIndex;
+  }
+
+  private static int fixedWidth(String type) {
+    switch (type) {
+      case ("java.lang.Integer"):
+        return 4;
+      case ("java.lang.Boolean"):
+        return 1;
+      case ("java.lang.Double"):
+      case ("java.util.Date"):
+        return 8;
+      default:
+        // Code of a string
+        return 4;
+    }
+  }
+
   // Instance methods
-  Hashtable<String, Comparable> peek() {
-    return records.get(0);
+  public byte[] getImage() throws DBAppException {
+    if (isEmpty()) {
+      return null;
+    }
+    if (columnar) {
+      return getColumnarImage();
+    }
+    // Encode strings up front to know the size of the page
+    int rowSize = (schema.length + 7) / 8;
+    int stringColumns = 0;
+    for (Column column : schema) {
+      rowSize += fixedWidth(column.getType());
+      if (column.getType().equals("java.lang.String")) {
+        stringColumns++;
+      }
+    }
+    // Strings the dictionaries have no room for are stored in the page
+    StringDictionary[] dictionaries = getDictionaries();
+    int[] codes = new int[records.size() * stringColumns];
+    byte[][] strings = new byte[codes.length][];
+    int size = HEADER_SIZE + rowSize * records.size();
+    int stringIndex = 0;
+    for (Row record : records) {
+      for (int i = 0; i < types.length; i++) {
+        if (types[i] == Row.STRING) {
+          String value = record.isPresent(i) ? record.getString(i) : null;
+          int code = value == null ? -1 : record.getCode(i);
+          if (value != null && code < 0) {
+            code = dictionaries[i].encode(value);
+          }
+          if (value != null && code < 0) {
+            strings[stringIndex] = value.getBytes(StandardCharsets.UTF_8);
+            code = -strings[stringIndex].length - 1;
+            size += strings[stringIndex].length;
+          }
+          codes[stringIndex++] = code;
+        }
+      }
+    }
+    flushDictionaries();
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC);
+    buffer.putInt(maxSize);
+    buffer.putInt(records.size());
+    buffer.putInt(schema.length);
+    stringIndex = 0;
+    for (Row record : records) {
+      stringIndex = writeRecord(buffer, record, types, codes, strings, stringIndex);
+    }
+    return buffer.array();
   }
 
-  void writeToDisk() throws DBAppException {
-    // Check if the page is empty
-    if (records.isEmpty()) {
-      // Delete page
-      if (!pageFile.delete()) {
-        throw new DBAppException("Could not delete page.");
+  // Header, column offsets and every column written by its vector
+  private synchronized byte[] getColumnarImage() throws DBAppException {
+    if (image != null && dictionaries != null) {
+      // The page did not change since it was read
+      return image;
+    }
+    StringDictionary[] dictionaries = getDictionaries();
+    ColumnVector[] columns = new ColumnVector[types.length];
+    int[][] codes = new int[types.length][];
+    byte[][][] strings = new byte[types.length][][];
+    int[] sizes = new int[types.length];
+    int size = HEADER_SIZE + 4 * types.length;
+    for (int column = 0; column < types.length; column++) {
+      columns[column] = vector(column);
+      codes[column] = types[column] == Row.STRING ? columns[column].getTableCodes(dictionaries[column]) : new int[0];
+      strings[column] = columns[column].getEncodedStrings(codes[column]);
+      sizes[column] = columns[column].getEncodedSize(strings[column]);
+      size += sizes[column];
+    }
+    flushDictionaries();
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(COLUMNAR_MAGIC);
+    buffer.putInt(maxSize);
+    buffer.putInt(size());
+    buffer.putInt(types.length);
+    int offset = HEADER_SIZE + 4 * types.length;
+    for (int column = 0; column < types.length; column++) {
+      buffer.putInt(offset);
+      offset += sizes[column];
+    }
+    for (int column = 0; column < types.length; column++) {
+      columns[column].encode(buffer, strings[column], codes[column]);
+    }
+    return buffer.array();
+  }
+
+  private StringDictionary[] getDictionaries() throws DBAppException {
+    return StringDictionary.forTable(pageFile.getParentFile().getParentFile(), schema);
+  }
+
+  // Strings of the image must be in the dictionary files before the image is written
+  private void flushDictionaries() throws DBAppException {
+    for (StringDictionary dictionary : getDictionaries()) {
+      if (dictionary != null) {
+        dictionary.flush();
       }
-    } else {
-      try {
-        ObjectOutputStream writer = new ObjectOutputStream(new FileOutputStream(pageFile));
-        writer.writeObject(this);
-        writer.flush();
-        writer.close();
-      } catch (IOException e) {
-        throw new DBAppException("Could not write page to disk: " + e.getMessage());
+    }
+  }
+
+  private synchronized ColumnVector vector(int column) {
+    if (vectors == null) {
+      vectors = new ColumnVector[types.length];
+    }
+    if (vectors[column] == null) {
+      if (records == null) {
+        ByteBuffer buffer = ByteBuffer.wrap(image);
+        buffer.position(columnOffsets[column]);
+        vectors[column] = ColumnVector.decode(buffer, types[column], rowCount,
+            dictionaries == null ? null : dictionaries[column]);
+      } else {
+        vectors[column] = ColumnVector.fromRows(records, column, types[column]);
       }
     }
+    return vectors[column];
+  }
+
+  // Rows of the page, a columnar page is turned into rows the first time its rows are read one by one
+  private synchronized ArrayList<Row> rows() {
+    if (records == null) {
+      ArrayList<Row> rows = new ArrayList<>(Math.max(maxSize, rowCount));
+      for (int row = 0; row < rowCount; row++) {
+        Row record = new Row(types);
+        for (int column = 0; column < types.length; column++) {
+          vector(column).copyTo(row, record, column);
+        }
+        rows.add(record);
+      }
+      records = rows;
+    }
+    return records;
+  }
+
+  // Rows about to change, the columns and the image of a columnar page won't match them anymore
+  private synchronized ArrayList<Row> changeRows() {
+    ArrayList<Row> rows = rows();
+    vectors = null;
+    image = null;
+    return rows;
+  }
+
+  public void writeToDisk(byte[] image, boolean sync) throws DBAppException {
+    Page.writeImage(pageFile, image, sync);
     changed = false;
+    if (image != null) {
+      getMetrics().pageWrites.increment();
+      getMetrics().pageBytesWritten.add(image.length);
+    }
+  }
+
+  public void writeToDisk() throws DBAppException {
+    writeToDisk(getImage(), false);
+  }
+
+  void insert(Row newRecord, String key) {
+    // Records are sorted ascending, insert after the records with an equal key
+    changeRows().add(upperBound(newRecord, ordinal(key)), newRecord);
+    changed = true;
+  }
+
+  // Adds a record after the others whatever its key
+  void append(Row newRecord) {
+    changeRows().add(newRecord);
+    changed = true;
+  }
+
+  // Detached copy of the rows, it is not in the buffer pool and is never written
+  TablePage copy() {
+    TablePage copy = createPage(pageFile, schema, pageId, maxSize, columnar);
+    for (Row record : rows()) {
+      // Updates change records in place
+      copy.records.add(record.copy());
+    }
+    return copy;
   }
 
-  Hashtable<String, Comparable> insert(Hashtable<String, Comparable> newRecord, String key) {
-    int index = 0;
-    Comparable keyValue = newRecord.get(key);
+  boolean isFull() {
+    return size() >= maxSize;
+  }
+
+  // Moves the upper half of the records into an empty page, the lower half keeps the extra record
+  void split(TablePage newPage) {
+    ArrayList<Row> rows = changeRows();
+    List<Row> upperHalf = rows.subList(rows.size() / 2, rows.size());
+    newPage.changeRows().addAll(upperHalf);
+    upperHalf.clear();
+    newPage.changed = true;
     changed = true;
-    // Looping over records
-    for (; index < records.size(); index++) {
-      // Get the record at the index and compare it to the new record
-      Comparable currentValue = records.get(index).get(key);
-      if (keyValue.compareTo(currentValue) >= 0) {
-        if (records.size() == maxSize) {
-          // Switch the current record with the record at the index
-          records.add(index, newRecord);
-          return records.remove(records.size() - 1);
-        } else {
-          records.add(index, newRecord);
-          return null;
+  }
+
+  private int upperBound(Row record, int key) {
+    ArrayList<Row> rows = rows();
+    int low = 0;
+    int high = rows.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (rows.get(mid).compare(key, record) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  Comparable getMinKey(String key) {
+    return get(0).get(ordinal(key));
+  }
+
+  Comparable getMaxKey(String key) {
+    return get(size() - 1).get(ordinal(key));
+  }
+
+  // Sorts pages written before records were kept in ascending order
+  void sort(String key) {
+    int column = ordinal(key);
+    ArrayList<Row> rows = rows();
+    for (int i = 1; i < rows.size(); i++) {
+      if (rows.get(i - 1).compare(column, rows.get(i)) > 0) {
+        changeRows().sort((r1, r2) -> r1.compare(column, r2));
+        changed = true;
+        return;
+      }
+    }
+  }
+
+  void delete(Row mask) {
+    ArrayList<Row> rows = changeRows();
+    int kept = 0;
+    for (Row record : rows) {
+      if (!record.matches(mask)) {
+        rows.set(kept++, record);
+      }
+    }
+    if (kept < rows.size()) {
+      rows.subList(kept, rows.size()).clear();
+      changed = true;
+    }
+  }
+
+  boolean containsMatch(Row mask) {
+    for (Row record : rows()) {
+      if (record.matches(mask)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Rows matching the predicate among the candidate rows, as bitmap words. Without a predicate every
+  // candidate matches, without candidates every row is one. Columnar pages are filtered a column at a time
+  long[] select(Predicate predicate, long[] candidates) {
+    int rows = size();
+    if (predicate == null || !columnar) {
+      long[] selected = new long[ColumnVector.words(rows)];
+      ArrayList<Row> records = predicate == null ? null : rows();
+      for (int row = 0; row < rows; row++) {
+        // Rows ruled out by the indices are not evaluated
+        boolean candidate = candidates == null
+            || ((row >>> 6) < candidates.length && (candidates[row >>> 6] & (1L << row)) != 0);
+        if (candidate && (predicate == null || predicate.matches(records.get(row)))) {
+          selected[row >>> 6] |= 1L << row;
         }
       }
+      return selected;
     }
-    // Check if the page isn't full
-    if (records.size() != maxSize) {
-      // add the record and return null
-      records.add(newRecord);
-      return null;
+    long[] selected = evaluate(predicate);
+    if (candidates != null) {
+      for (int word = 0; word < selected.length; word++) {
+        selected[word] &= word < candidates.length ? candidates[word] : 0;
+      }
     }
-    changed = false;
-    // Return overflow record
-    return newRecord;
+    return selected;
   }
 
-  void delete(Hashtable<String, Comparable> mask) {
-    for (int i = 0; i < records.size(); i++) {
-      Hashtable<String, Comparable> currentRecord = records.get(i);
-      // Check if the record matches the mask
-      boolean match = true;
-      for (String colName : mask.keySet()) {
-        Comparable value = mask.get(colName);
-        if (!(currentRecord.get(colName).compareTo(value) == 0)) {
-          match = false;
-          break;
+  // New hashtables of the selected rows, a columnar page is not turned into rows
+  List<Hashtable<String, Object>> getRecords(long[] selected) {
+    List<Hashtable<String, Object>> output = new ArrayList<>();
+    ArrayList<Row> rows = records;
+    ColumnVector[] columns = null;
+    if (rows == null) {
+      columns = new ColumnVector[types.length];
+      for (int column = 0; column < types.length; column++) {
+        columns[column] = vector(column);
+      }
+    }
+    for (int word = 0; word < selected.length; word++) {
+      for (long bits = selected[word]; bits != 0; bits &= bits - 1) {
+        int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+        if (rows != null) {
+          output.add(rows.get(row).toHashtable(schema));
+          continue;
         }
+        Hashtable<String, Object> record = new Hashtable<>(schema.length * 2);
+        for (int column = 0; column < columns.length; column++) {
+          Comparable value = columns[column].get(row);
+          if (value != null) {
+            record.put(schema[column].getName(), value);
+          }
+        }
+        output.add(record);
       }
-      if (match) {
-        records.remove(i--);
-        changed = true;
+    }
+    return output;
+  }
+
+  // Only the columns of the terms are decoded, the other terms of an AND are skipped once no row is left
+  private long[] evaluate(Predicate predicate) {
+    if (predicate.type == Predicate.TERM) {
+      return vector(predicate.ordinal).select(predicate);
+    }
+    long[] left = evaluate(predicate.left);
+    if (predicate.type == Predicate.AND && isEmpty(left)) {
+      return left;
+    }
+    long[] right = evaluate(predicate.right);
+    for (int word = 0; word < left.length; word++) {
+      switch (predicate.type) {
+        case Predicate.AND:
+          left[word] &= right[word];
+          break;
+        case Predicate.OR:
+          left[word] |= right[word];
+          break;
+        default:
+          left[word] ^= right[word];
+      }
+    }
+    return left;
+  }
+
+  private static boolean isEmpty(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
       }
     }
+    return true;
   }
 
-  boolean isEmpty() {
-    return records.isEmpty();
+  public boolean isEmpty() {
+    return size() == 0;
   }
 
   // Bitmap methods
   Comparable[] getValues(String colName) {
-    Comparable[] map = new Comparable[records.size()];
+    int column = ordinal(colName);
+    ArrayList<Row> rows = records;
+    Comparable[] map = new Comparable[size()];
     for (int i = 0; i < map.length; i++) {
-      map[i] = records.get(i).get(colName);
+      // Columnar pages only decode the column
+      map[i] = rows == null ? vector(column).get(i) : rows.get(i).get(column);
     }
     return map;
   }
 
-  Hashtable<String, Comparable> get(int index) {
-    return records.get(index);
+  Row get(int index) {
+    return rows().get(index);
+  }
+
+  int size() {
+    ArrayList<Row> rows = records;
+    return rows == null ? rowCount : rows.size();
   }
 
   // Private methods
@@ -126,57 +564,33 @@ class TablePage implements Serializable {
     return MetaData.getTablePageSize();
   }
 
-  HashSet<Hashtable<String, Comparable>> get(String strColumnName, Object objValue) {
-    HashSet<Hashtable<String, Comparable>> bag = new HashSet<>();
-    for (Hashtable<String, Comparable> record : records) {
-      if (record.get(strColumnName).compareTo(objValue) == 0) {
-        bag.add(record);
-      }
-    }
-    return bag;
-  }
-
   boolean contains(String strColumnName, Object objValue) {
-    for (Hashtable<String, Comparable> record : records) {
-      if (((Comparable) objValue).compareTo(record.get(strColumnName)) == 0) {
+    int column = ordinal(strColumnName);
+    for (Row record : rows()) {
+      if (record.isPresent(column) && record.compare(column, (Comparable) objValue) == 0) {
         return true;
       }
     }
     return false;
   }
 
-  HashSet<Hashtable<String, Comparable>> getAll() {
-    return new HashSet<>(records);
-  }
-
-  HashSet<Hashtable<String, Comparable>> getAll(boolean[] map) {
-    HashSet<Hashtable<String, Comparable>> output = new HashSet<>();
-    for (int i = 0; i < map.length; i++) {
-      if(map[i]) {
-        output.add(records.get(i));
-      }
-    }
-    return output;
-  }
-
-  List<Hashtable<String, Object>> update(Hashtable<String, Comparable> mask, String keyCol, String tableKeyColumn) {
-    List<Hashtable<String, Object>> output = new ArrayList<>();
+  List<Row> update(Row mask, String keyCol, String tableKeyColumn) {
+    List<Row> output = new ArrayList<>();
+    ArrayList<Row> records = changeRows();
+    int keyColumn = ordinal(keyCol);
     // Check if updated records should be re-inserted for sorting
-    boolean removeMatches = (!keyCol.equals(tableKeyColumn)) && mask.containsKey(tableKeyColumn);
-    if(removeMatches) System.out.println("HERE");
+    boolean removeMatches = !keyCol.equals(tableKeyColumn) && mask.isPresent(ordinal(tableKeyColumn));
     // Loop over records
     for (int i = 0; i < records.size(); i++) {
-      Hashtable<String, Comparable> row = records.get(i);
+      Row row = records.get(i);
       // Check if the record matches the mask
-      if (row.get(keyCol).compareTo(mask.get(keyCol)) == 0) {
+      if (row.isPresent(keyColumn) && row.compare(keyColumn, mask) == 0) {
         // Updating record
         changed = true;
-        for (String colName : mask.keySet()) {
-          row.put(colName, mask.get(colName));
-        }
+        row.update(mask);
         // Add the record to the output and remove from the page
         if (removeMatches) {
-          output.add(new Hashtable<>(row));
+          output.add(row);
           records.remove(i--);
         }
       }
@@ -184,7 +598,33 @@ class TablePage implements Serializable {
     return output;
   }
 
+  // Position of the column in the rows
+  int ordinal(String colName) {
+    for (int i = 0; i < schema.length; i++) {
+      if (schema[i].getName().equals(colName)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown column: " + colName);
+  }
+
   public boolean isChanged() {
     return changed;
   }
+
+  public File getPageFile() {
+    return pageFile;
+  }
+
+  public Metrics.TableMetrics getMetrics() {
+    if (metrics == null) {
+      // Pages are stored in <table>/pages/
+      metrics = Metrics.forTable(pageFile.getAbsoluteFile().getParentFile().getParentFile().getName());
+    }
+    return metrics;
+  }
+
+  int getPageId() {
+    return pageId;
+  }
 }
@@ -0,0 +1,46 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// Columns of a table resolved once per DDL change, ordered by name like the columns in table pages
+class TableSchema {
+  private final Class<?>[] types;
+  private final boolean[] keys;
+  private final HashMap<String, Integer> positions;
+
+  TableSchema(HashSet<Column> columns) throws DBAppException {
+    Column[] sorted = columns.toArray(new Column[0]);
+    Arrays.sort(sorted, Comparator.comparing(Column::getName));
+    types = new Class<?>[sorted.length];
+    keys = new boolean[sorted.length];
+    positions = new HashMap<>(sorted.length * 2);
+    for (int i = 0; i < sorted.length; i++) {
+      try {
+        types[i] = Class.forName(sorted[i].getType());
+      } catch (ClassNotFoundException e) {
+        throw new DBAppException("Invalid datatype for the column: " + sorted[i].getType());
+      }
+      keys[i] = sorted[i].isKey();
+      positions.put(sorted[i].getName(), i);
+    }
+  }
+
+  // Returns the position of the column, or -1 if the table doesn't have it
+  int indexOf(String colName) {
+    Integer position = positions.get(colName);
+    return position == null ? -1 : position;
+  }
+
+  Class<?> getType(int column) {
+    return types[column];
+  }
+
+  boolean isKey(int column) {
+    return keys[column];
+  }
+
+  int size() {
+    return types.length;
+  }
+}
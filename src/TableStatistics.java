@@ -0,0 +1,122 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+// Row counts, distinct counts and equi-depth histograms of a table, gathered by DBApp.analyzeTable
+class TableStatistics implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int BUCKET_COUNT = 32;
+  private int rowCount;
+  private int pageCount;
+  private Hashtable<String, Integer> distinctCounts;
+  // Upper bound of every histogram bucket, every bucket holds about the same number of rows
+  private Hashtable<String, Comparable[]> histograms;
+
+  TableStatistics(Table table) throws DBAppException {
+    distinctCounts = new Hashtable<>();
+    histograms = new Hashtable<>();
+    Column[] schema = table.getSchema();
+    ArrayList<ArrayList<Comparable>> values = new ArrayList<>();
+    for (int i = 0; i < schema.length; i++) {
+      values.add(new ArrayList<>());
+    }
+    pageCount = table.getPages().size();
+    for (int pageNum = 0; pageNum < pageCount; pageNum++) {
+      TablePage page = table.loadPage(pageNum);
+      rowCount += page.size();
+      for (int i = 0; i < schema.length; i++) {
+        for (Comparable value : page.getValues(schema[i].getName())) {
+          if (value != null) {
+            values.get(i).add(value);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < schema.length; i++) {
+      Comparable[] sorted = values.get(i).toArray(new Comparable[0]);
+      values.set(i, null);
+      Arrays.sort(sorted);
+      int distinct = 0;
+      for (int j = 0; j < sorted.length; j++) {
+        if (j == 0 || sorted[j].compareTo(sorted[j - 1]) != 0) {
+          distinct++;
+        }
+      }
+      distinctCounts.put(schema[i].getName(), distinct);
+      if (sorted.length > 0) {
+        int buckets = Math.min(BUCKET_COUNT, sorted.length);
+        Comparable[] bounds = new Comparable[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+          bounds[bucket] = sorted[(int) ((long) (bucket + 1) * sorted.length / buckets) - 1];
+        }
+        histograms.put(schema[i].getName(), bounds);
+      }
+    }
+  }
+
+  // Estimated fraction of the rows matching the condition, terms are assumed to be independent
+  double selectivity(Predicate predicate) {
+    if (predicate.type == Predicate.TERM) {
+      return termSelectivity(predicate);
+    }
+    double left = selectivity(predicate.left);
+    double right = selectivity(predicate.right);
+    switch (predicate.type) {
+      case Predicate.AND:
+        return left * right;
+      case Predicate.OR:
+        return left + right - left * right;
+      default:
+        return left + right - 2 * left * right;
+    }
+  }
+
+  int getRowCount() {
+    return rowCount;
+  }
+
+  double getRowsPerPage() {
+    return pageCount == 0 ? 0 : (double) rowCount / pageCount;
+  }
+
+  // Private methods
+  private double termSelectivity(Predicate term) {
+    Integer distinct = distinctCounts.get(term.column);
+    if (distinct == null || distinct == 0) {
+      return 0;
+    }
+    double equal = 1.0 / distinct;
+    switch (term.operator) {
+      case Predicate.EQUAL:
+        return equal;
+      case Predicate.NOT_EQUAL:
+        return 1 - equal;
+      case Predicate.LESS:
+        return fractionBelow(term.column, term.value);
+      case Predicate.LESS_OR_EQUAL:
+        return Math.min(1, fractionBelow(term.column, term.value) + equal);
+      case Predicate.GREATER:
+        return Math.max(0, 1 - fractionBelow(term.column, term.value) - equal);
+      default:
+        return 1 - fractionBelow(term.column, term.value);
+    }
+  }
+
+  // Fraction of the rows with a value smaller than the value, up to one bucket off
+  private double fractionBelow(String colName, Comparable value) {
+    Comparable[] bounds = histograms.get(colName);
+    int low = 0;
+    int high = bounds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (bounds[mid].compareTo(value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    // Assume the value is in the middle of its bucket
+    return Math.min(1, (low + (low < bounds.length ? 0.5 : 0)) / bounds.length);
+  }
+}
@@ -0,0 +1,168 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+// Keeps the page images that open snapshots of a table still need. A snapshot sees the row changes up to
+// its version, writers save the image of a page before the first change after the newest snapshot, so a
+// snapshot reads the oldest saved image newer than itself or else the current page
+class VersionStore {
+  // Readers of every pinned version
+  private final TreeMap<Long, Integer> snapshots;
+  // Saved images of every page, ordered by the version that replaced them
+  private final HashMap<Integer, ArrayList<PageVersion>> versions;
+
+  private static class PageVersion {
+    // First version that does not see this image
+    final long until;
+    // Detached copy of the page, or the file of a page replaced as a whole
+    final TablePage page;
+    final File file;
+
+    PageVersion(long until, TablePage page, File file) {
+      this.until = until;
+      this.page = page;
+      this.file = file;
+    }
+  }
+
+  // A pinned version, released once by its reader
+  class Snapshot {
+    final long version;
+    private boolean released;
+
+    private Snapshot(long version) {
+      this.version = version;
+    }
+
+    // Image of the page as this snapshot sees it, or null if the current page is still that image
+    TablePage getPage(int pageId, Column[] schema) throws DBAppException {
+      File file;
+      synchronized (VersionStore.this) {
+        PageVersion pageVersion = find(pageId, version);
+        if (pageVersion == null) {
+          return null;
+        }
+        if (pageVersion.page != null) {
+          return pageVersion.page;
+        }
+        file = pageVersion.file;
+      }
+      // Replaced pages are read from their old file, which is kept until the snapshot is released
+      return BufferPool.getTablePage(file, pageId, schema);
+    }
+
+    void release() {
+      synchronized (VersionStore.this) {
+        if (released) {
+          return;
+        }
+        released = true;
+        int readers = snapshots.get(version);
+        if (readers == 1) {
+          snapshots.remove(version);
+        } else {
+          snapshots.put(version, readers - 1);
+        }
+      }
+      // Old images are dropped on the scan pool, so the reader does not wait for deleted files
+      try {
+        ParallelScan.submit(() -> {
+          reclaim();
+          return null;
+        });
+      } catch (DBAppException e) {
+        reclaim();
+      }
+    }
+  }
+
+  VersionStore() {
+    snapshots = new TreeMap<>();
+    versions = new HashMap<>();
+  }
+
+  synchronized Snapshot pin(long version) {
+    snapshots.merge(version, 1, Integer::sum);
+    return new Snapshot(version);
+  }
+
+  // Saves the image of a page before the change with the version, if an open snapshot still sees it
+  synchronized void preserve(TablePage page, long version) {
+    ArrayList<PageVersion> pageVersions = versions.get(page.getPageId());
+    if (snapshots.isEmpty()
+        || (pageVersions != null && pageVersions.get(pageVersions.size() - 1).until > snapshots.lastKey())) {
+      // No snapshot, or every snapshot is served by an image saved earlier
+      return;
+    }
+    versions.computeIfAbsent(page.getPageId(), pageId -> new ArrayList<>())
+        .add(new PageVersion(version, page.copy(), null));
+  }
+
+  // Keeps the file of a page that was replaced by the change with the version, while snapshots read it
+  void retire(int pageId, File file, long version) throws DBAppException {
+    synchronized (this) {
+      if (!snapshots.isEmpty()) {
+        versions.computeIfAbsent(pageId, id -> new ArrayList<>()).add(new PageVersion(version, null, file));
+        // Retired files are garbage once the process ends
+        file.deleteOnExit();
+        return;
+      }
+    }
+    delete(file);
+  }
+
+  // Drops the images no open snapshot can see anymore
+  void reclaim() {
+    ArrayList<File> files = new ArrayList<>();
+    synchronized (this) {
+      long oldest = snapshots.isEmpty() ? Long.MAX_VALUE : snapshots.firstKey();
+      Iterator<ArrayList<PageVersion>> pages = versions.values().iterator();
+      while (pages.hasNext()) {
+        ArrayList<PageVersion> pageVersions = pages.next();
+        Iterator<PageVersion> iterator = pageVersions.iterator();
+        while (iterator.hasNext()) {
+          PageVersion pageVersion = iterator.next();
+          if (pageVersion.until > oldest) {
+            break;
+          }
+          if (pageVersion.file != null) {
+            files.add(pageVersion.file);
+          }
+          iterator.remove();
+        }
+        if (pageVersions.isEmpty()) {
+          pages.remove();
+        }
+      }
+    }
+    for (File file : files) {
+      try {
+        delete(file);
+      } catch (DBAppException e) {
+        // The file is deleted on exit instead
+      }
+    }
+  }
+
+  // Private methods
+  private PageVersion find(int pageId, long version) {
+    ArrayList<PageVersion> pageVersions = versions.get(pageId);
+    if (pageVersions != null) {
+      for (PageVersion pageVersion : pageVersions) {
+        if (pageVersion.until > version) {
+          return pageVersion;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static void delete(File file) throws DBAppException {
+    BufferPool.discard(file);
+    if (file.exists() && !file.delete()) {
+      throw new DBAppException("Could not delete page.");
+    }
+  }
+}
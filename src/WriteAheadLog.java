@@ -0,0 +1,359 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Append-only log of the row changes of a table since its last checkpoint. Pages and the table descriptor
+// are only written by checkpoints, changes after the last checkpoint are redone from the log on startup
+class WriteAheadLog {
+  static final byte INSERT = 0;
+  static final byte UPDATE = 1;
+  static final byte DELETE = 2;
+  private static final int JOURNAL_MAGIC = 0x434b5031;
+  // Value tags of the record encoding
+  private static final byte STRING = 0;
+  private static final byte INTEGER = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte BOOLEAN = 3;
+  private static final byte DATE = 4;
+  private final File journalFile;
+  private final FileChannel channel;
+  // Bytes written to the log and bytes known to be on stable storage. Positions keep growing across
+  // checkpoints, the log file starts at the base position
+  private long base;
+  private long appended;
+  private long durable;
+  private boolean syncing;
+
+  static class Entry {
+    final byte type;
+    final String keyCol;
+    final Hashtable<String, Object> row;
+
+    private Entry(byte type, String keyCol, Hashtable<String, Object> row) {
+      this.type = type;
+      this.keyCol = keyCol;
+      this.row = row;
+    }
+  }
+
+  WriteAheadLog(String tablePath, String tableName) throws DBAppException {
+    journalFile = new File(tablePath + tableName + ".checkpoint");
+    try {
+      channel = FileChannel.open(new File(tablePath + tableName + ".wal").toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      appended = durable = channel.size();
+    } catch (IOException e) {
+      throw new DBAppException("Could not open log: " + e.getMessage());
+    }
+  }
+
+  // Encodes a row change, it is encoded before the change is applied so a change the log can't take
+  // is never applied
+  static byte[] encode(byte type, String keyCol, Map<String, ?> row) throws DBAppException {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.writeByte(type);
+      writeString(out, keyCol == null ? "" : keyCol);
+      writeRow(out, row);
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), 8, buffer.limit() - 8);
+      buffer.putInt(0, buffer.limit() - 8);
+      buffer.putInt(4, (int) crc.getValue());
+      return buffer.array();
+    } catch (IOException e) {
+      throw new DBAppException("Could not encode log record: " + e.getMessage());
+    }
+  }
+
+  // Appends an encoded row change and returns the log position to wait for on commit
+  synchronized long append(byte[] entry) throws DBAppException {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(entry);
+      channel.position(appended - base);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      appended = base + channel.position();
+      return appended;
+    } catch (IOException e) {
+      throw new DBAppException("Could not append to log: " + e.getMessage());
+    }
+  }
+
+  // Position after the last appended record
+  synchronized long position() {
+    return appended;
+  }
+
+  // Waits until the log is on stable storage up to the position. The first waiter syncs everything
+  // appended so far, callers that arrive meanwhile are covered by the next sync
+  void commit(long position) throws DBAppException {
+    long target;
+    synchronized (this) {
+      while (durable < position && syncing) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DBAppException("Interrupted while committing");
+        }
+      }
+      if (durable >= position) {
+        return;
+      }
+      syncing = true;
+      target = appended;
+    }
+    try {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new DBAppException("Could not sync log: " + e.getMessage());
+    } finally {
+      synchronized (this) {
+        durable = Math.max(durable, target);
+        syncing = false;
+        notifyAll();
+      }
+    }
+  }
+
+  // Closes the log file, the log can't be used afterwards
+  synchronized void close() throws DBAppException {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new DBAppException("Could not close log: " + e.getMessage());
+    }
+  }
+
+  synchronized long size() {
+    return appended - base;
+  }
+
+  // Reads the complete records of the log, a torn record at the end is cut off
+  synchronized List<Entry> read() throws DBAppException {
+    List<Entry> entries = new ArrayList<>();
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      channel.position(0);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      long valid = 0;
+      while (buffer.remaining() >= 8) {
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+          break;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.position(), length);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), length));
+        byte type = in.readByte();
+        String keyCol = readString(in);
+        entries.add(new Entry(type, keyCol.isEmpty() ? null : keyCol, readRow(in)));
+        buffer.position(buffer.position() + length);
+        valid = buffer.position();
+      }
+      channel.truncate(valid);
+      appended = durable = base + valid;
+    } catch (IOException e) {
+      throw new DBAppException("Could not read log: " + e.getMessage());
+    }
+    return entries;
+  }
+
+  // Writes the pages and the table descriptor, then empties the log. The images are journaled first so
+  // a crash in the middle of the checkpoint can't leave a mix of old and new pages
+  synchronized void checkpoint(List<Page> pages, File descriptorFile, byte[] descriptor) throws DBAppException {
+    List<File> files = new ArrayList<>();
+    List<byte[]> images = new ArrayList<>();
+    for (Page page : pages) {
+      files.add(page.getPageFile());
+      images.add(page.getImage());
+    }
+    files.add(descriptorFile);
+    images.add(descriptor);
+    writeJournal(files, images);
+    try {
+      // The journal holds every change in the log
+      channel.truncate(0);
+      channel.force(false);
+      // Commits waiting for a sync of the old log are covered by the journal
+      base = durable = appended;
+    } catch (IOException e) {
+      throw new DBAppException("Could not truncate log: " + e.getMessage());
+    }
+    for (int i = 0; i < pages.size(); i++) {
+      pages.get(i).writeToDisk(images.get(i), true);
+    }
+    Page.writeImage(descriptorFile, descriptor, true);
+    if (!journalFile.delete()) {
+      throw new DBAppException("Could not delete checkpoint journal");
+    }
+  }
+
+  // Finishes a checkpoint that was interrupted after its journal was complete, must run before the
+  // table descriptor is loaded
+  static void recoverCheckpoint(String tablePath, String tableName) throws DBAppException {
+    File journal = new File(tablePath + tableName + ".checkpoint");
+    if (!journal.exists()) {
+      return;
+    }
+    List<File> files = new ArrayList<>();
+    List<byte[]> images = new ArrayList<>();
+    boolean complete;
+    try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(journal)),
+        new CRC32())) {
+      DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != JOURNAL_MAGIC) {
+        throw new EOFException();
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        files.add(new File(in.readUTF()));
+        int length = in.readInt();
+        byte[] image = null;
+        if (length >= 0) {
+          image = new byte[length];
+          in.readFully(image);
+        }
+        images.add(image);
+      }
+      long checksum = checked.getChecksum().getValue();
+      complete = in.readLong() == checksum;
+    } catch (EOFException e) {
+      complete = false;
+    } catch (IOException e) {
+      throw new DBAppException("Could not read checkpoint journal: " + e.getMessage());
+    }
+    if (complete) {
+      // Redo the whole checkpoint, the log was already covered by it
+      for (int i = 0; i < files.size(); i++) {
+        Page.writeImage(files.get(i), images.get(i), true);
+      }
+      Page.writeImage(new File(tablePath + tableName + ".wal"), new byte[0], true);
+    }
+    // An incomplete journal means no page was written yet, the log still holds the changes
+    if (!journal.delete()) {
+      throw new DBAppException("Could not delete checkpoint journal");
+    }
+  }
+
+  // Row encoding of the log, also used for the sorted runs of bulk loads
+  static void writeRow(DataOutputStream out, Map<String, ?> row) throws IOException {
+    out.writeInt(row.size());
+    for (Map.Entry<String, ?> column : row.entrySet()) {
+      writeString(out, column.getKey());
+      writeValue(out, column.getValue());
+    }
+  }
+
+  static Hashtable<String, Object> readRow(DataInputStream in) throws IOException {
+    int columns = in.readInt();
+    Hashtable<String, Object> row = new Hashtable<>();
+    for (int i = 0; i < columns; i++) {
+      row.put(readString(in), readValue(in));
+    }
+    return row;
+  }
+
+  // Private methods
+  private void writeJournal(List<File> files, List<byte[]> images) throws DBAppException {
+    try (FileOutputStream fileStream = new FileOutputStream(journalFile)) {
+      CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileStream, 65536), new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(JOURNAL_MAGIC);
+      out.writeInt(files.size());
+      for (int i = 0; i < files.size(); i++) {
+        out.writeUTF(files.get(i).getPath());
+        byte[] image = images.get(i);
+        out.writeInt(image == null ? -1 : image.length);
+        if (image != null) {
+          out.write(image);
+        }
+      }
+      out.writeLong(checked.getChecksum().getValue());
+      out.flush();
+      fileStream.getChannel().force(false);
+    } catch (IOException e) {
+      throw new DBAppException("Could not write checkpoint journal: " + e.getMessage());
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Date) {
+      out.writeByte(DATE);
+      out.writeLong(((Date) value).getTime());
+    } else {
+      throw new IOException("Unsupported value type " + value.getClass().getName());
+    }
+  }
+
+  // Strings are length prefixed UTF-8, writeUTF can't take strings longer than 65535 bytes
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case STRING:
+        return readString(in);
+      case INTEGER:
+        return in.readInt();
+      case DOUBLE:
+        return in.readDouble();
+      case BOOLEAN:
+        return in.readBoolean();
+      case DATE:
+        return new Date(in.readLong());
+      default:
+        throw new IOException("Unknown value tag " + tag);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+import java.io.Serializable;
+import java.util.Hashtable;
+import java.util.Map;
+
+// Summary of the values of every column in a table page, used to skip pages that can't match a term
+class ZoneMap implements Serializable {
+  private static final long serialVersionUID = 1L;
+  // Smallest and biggest non null value of every column
+  private Hashtable<String, Comparable> minValues;
+  private Hashtable<String, Comparable> maxValues;
+
+  ZoneMap(TablePage page, Column[] schema) {
+    minValues = new Hashtable<>();
+    maxValues = new Hashtable<>();
+    for (int row = 0; row < page.size(); row++) {
+      add(page.get(row), schema);
+    }
+  }
+
+  // Widens the summary to hold a newly inserted record
+  void add(Row record, Column[] schema) {
+    for (int i = 0; i < schema.length; i++) {
+      String colName = schema[i].getName();
+      // Null values never match a term, so they don't widen the summary
+      if (!record.isPresent(i)) {
+        continue;
+      }
+      // Values are only boxed when they widen the summary
+      Comparable min = minValues.get(colName);
+      if (min == null || record.compare(i, min) < 0) {
+        minValues.put(colName, record.get(i));
+      }
+      Comparable max = maxValues.get(colName);
+      if (max == null || record.compare(i, max) > 0) {
+        maxValues.put(colName, record.get(i));
+      }
+    }
+  }
+
+  // Checks if any row of the page can match the term, null values never match
+  boolean mayMatch(Predicate term) {
+    Comparable min = minValues.get(term.column);
+    Comparable max = maxValues.get(term.column);
+    if (min == null) {
+      return false;
+    }
+    switch (term.operator) {
+      case Predicate.EQUAL:
+        return min.compareTo(term.value) <= 0 && max.compareTo(term.value) >= 0;
+      case Predicate.NOT_EQUAL:
+        return !isConstant(term.column) || min.compareTo(term.value) != 0;
+      case Predicate.LESS:
+        return min.compareTo(term.value) < 0;
+      case Predicate.LESS_OR_EQUAL:
+        return min.compareTo(term.value) <= 0;
+      case Predicate.GREATER:
+        return max.compareTo(term.value) > 0;
+      default:
+        return max.compareTo(term.value) >= 0;
+    }
+  }
+
+  // Checks if any row of the page can be equal to the mask
+  boolean mayContain(Map<String, ?> mask) {
+    for (String colName : mask.keySet()) {
+      Comparable min = minValues.get(colName);
+      if (min == null || min.compareTo(mask.get(colName)) > 0
+          || maxValues.get(colName).compareTo(mask.get(colName)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Checks if every non null value of the column is the same
+  boolean isConstant(String colName) {
+    Comparable min = minValues.get(colName);
+    return min != null && min.compareTo(maxValues.get(colName)) == 0;
+  }
+}
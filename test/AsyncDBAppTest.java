@@ -0,0 +1,163 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class AsyncDBAppTest {
+  private static final int tableOperations = 2;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+    MetaData.overrideProperty("AsyncTableOperations", String.valueOf(tableOperations));
+  }
+
+  @Test
+  void operationsCompleteAndPublisherStreamsEveryRow() throws Exception {
+    String tableName = "Async";
+    DBApp app = new DBApp();
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "name", "java.lang.String"));
+    AsyncDBApp async = new AsyncDBApp(app);
+    List<CompletableFuture<Void>> inserts = new ArrayList<>();
+    for (int id = 0; id < 100; id++) {
+      inserts.add(async.insertIntoTable(tableName, TestSupport.record("id", id, "name", "n" + id)));
+    }
+    CompletableFuture.allOf(inserts.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+    async.deleteFromTable(tableName, TestSupport.record("id", 0)).get(60, TimeUnit.SECONDS);
+
+    SQLTerm[] terms = {TestSupport.term(tableName, "id", ">=", 0)};
+    assertEquals(99, async.selectFromTable(terms, new String[0]).get(60, TimeUnit.SECONDS).size());
+
+    // The subscriber asks for a few rows at a time
+    Set<Object> ids = new HashSet<>();
+    CompletableFuture<Void> completed = new CompletableFuture<>();
+    async.selectPublisher(terms, new String[0]).subscribe(new Flow.Subscriber<Hashtable<String, Object>>() {
+      private Flow.Subscription subscription;
+      private int received;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(7);
+      }
+
+      @Override
+      public void onNext(Hashtable<String, Object> row) {
+        ids.add(row.get("id"));
+        if (++received % 7 == 0) {
+          subscription.request(7);
+        }
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        completed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        completed.complete(null);
+      }
+    });
+    completed.get(60, TimeUnit.SECONDS);
+    assertEquals(99, ids.size());
+    async.shutdown();
+  }
+
+  @Test
+  void tableRunsAtMostTheBoundOfOperationsAtOnce() throws Exception {
+    BlockingApp app = new BlockingApp();
+    AsyncDBApp async = new AsyncDBApp(app);
+    List<CompletableFuture<Void>> inserts = new ArrayList<>();
+    for (int id = 0; id < 6; id++) {
+      inserts.add(async.insertIntoTable("Bounded", TestSupport.record("id", id)));
+    }
+    // Another table has its own queue
+    CompletableFuture<Void> other = async.insertIntoTable("Other", TestSupport.record("id", 0));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while ((app.running("Bounded") < tableOperations || app.running("Other") < 1)
+        && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(tableOperations, app.running("Bounded"));
+    assertEquals(1, app.running("Other"));
+
+    app.release.countDown();
+    CompletableFuture.allOf(inserts.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+    other.get(60, TimeUnit.SECONDS);
+    assertEquals(tableOperations, app.mostRunning("Bounded"));
+    async.shutdown();
+  }
+
+  @Test
+  void errorsCompleteTheFutureAndFreeTheSlot() throws Exception {
+    BlockingApp app = new BlockingApp();
+    app.release.countDown();
+    AsyncDBApp async = new AsyncDBApp(app);
+    List<CompletableFuture<Void>> failures = new ArrayList<>();
+    for (int i = 0; i < tableOperations + 1; i++) {
+      failures.add(async.insertIntoTable("Failing", TestSupport.record("fail", true)));
+    }
+    for (CompletableFuture<Void> failure : failures) {
+      ExecutionException e = assertThrows(ExecutionException.class, () -> failure.get(60, TimeUnit.SECONDS));
+      assertInstanceOf(AssertionError.class, e.getCause());
+    }
+    async.insertIntoTable("Failing", TestSupport.record("id", 0)).get(60, TimeUnit.SECONDS);
+    assertTrue(app.mostRunning("Failing") <= tableOperations);
+    async.shutdown();
+  }
+
+  // Inserts wait until released and count how many run at once on every table, records with fail throw an
+  // error
+  private static class BlockingApp extends DBApp {
+    final CountDownLatch release = new CountDownLatch(1);
+    private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> mostRunning = new ConcurrentHashMap<>();
+
+    BlockingApp() throws DBAppException {
+    }
+
+    @Override
+    public void insertIntoTable(String tableName, Hashtable<String, Object> record) {
+      if (record.containsKey("fail")) {
+        throw new AssertionError("Insert failed");
+      }
+      AtomicInteger tableRunning = running.computeIfAbsent(tableName, name -> new AtomicInteger());
+      mostRunning.computeIfAbsent(tableName, name -> new AtomicInteger())
+          .accumulateAndGet(tableRunning.incrementAndGet(), Math::max);
+      try {
+        release.await(60, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        tableRunning.decrementAndGet();
+      }
+    }
+
+    int running(String tableName) {
+      return running.getOrDefault(tableName, new AtomicInteger()).get();
+    }
+
+    int mostRunning(String tableName) {
+      return mostRunning.getOrDefault(tableName, new AtomicInteger()).get();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Loads larger than BulkLoadRunSize are sorted in runs on disk and merged with the rows of the table
+class BulkLoadTest {
+  private static final int runSize = 64;
+  private static final int departments = 6;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+    MetaData.overrideProperty("BulkLoadRunSize", String.valueOf(runSize));
+  }
+
+  @Test
+  void runsAreMergedWithTheRowsOfTheTable() throws Exception {
+    String tableName = "Bulk";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int id = 1; id < 400; id += 2) {
+      app.insertIntoTable(tableName, record(id));
+      expected.put(id, id % departments);
+    }
+    app.createBitmapIndex(tableName, "dept");
+    List<Hashtable<String, Object>> loaded = new ArrayList<>();
+    for (int id = 0; id < 20 * runSize; id += 2) {
+      loaded.add(record(id));
+      expected.put(id, id % departments);
+    }
+    Collections.shuffle(loaded, new Random(3));
+
+    app.bulkInsert(tableName, loaded.iterator());
+    assertTable(app, tableName, expected);
+    assertEquals(0, runFiles(tableName));
+    Table table = MetaData.getTable(tableName);
+    int pageSize = MetaData.getTablePageSize();
+    assertEquals((expected.size() + pageSize - 1) / pageSize, table.getPages().size());
+
+    MetaData.reset();
+    assertTable(new DBApp(), tableName, expected);
+  }
+
+  @Test
+  void invalidRowAfterSpilledRunsLeavesTheTable() throws Exception {
+    String tableName = "BulkInvalid";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int id = 0; id < 100; id++) {
+      app.insertIntoTable(tableName, record(id));
+      expected.put(id, id % departments);
+    }
+    List<Hashtable<String, Object>> loaded = new ArrayList<>();
+    for (int id = 100; id < 100 + 5 * runSize; id++) {
+      loaded.add(record(id));
+    }
+    loaded.add(TestSupport.record("id", "not a number", "dept", 0, "name", "invalid"));
+
+    assertThrows(DBAppException.class, () -> app.bulkInsert(tableName, loaded.iterator()));
+    assertEquals(0, runFiles(tableName));
+    assertTable(app, tableName, expected);
+  }
+
+  @Test
+  void longStringsGoThroughTheRuns() throws Exception {
+    String tableName = "BulkLongString";
+    DBApp app = createTable(tableName);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      builder.append((char) ('a' + i % 26));
+    }
+    List<Hashtable<String, Object>> loaded = new ArrayList<>();
+    for (int id = 0; id < 2 * runSize; id++) {
+      loaded.add(TestSupport.record("id", id, "dept", 0, "name", builder.toString() + id));
+    }
+    Collections.shuffle(loaded, new Random(5));
+
+    app.bulkInsert(tableName, loaded.iterator());
+    List<Hashtable<String, Object>> result = TestSupport.select(app, tableName, "id", ">=", 0);
+    assertEquals(2 * runSize, result.size());
+    for (int id = 0; id < result.size(); id++) {
+      assertEquals(builder.toString() + id, result.get(id).get("name"));
+    }
+  }
+
+  private static DBApp createTable(String tableName) throws DBAppException {
+    DBApp app = new DBApp();
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "dept", "java.lang.Integer",
+        "name", "java.lang.String"));
+    return app;
+  }
+
+  private static Hashtable<String, Object> record(int id) {
+    return TestSupport.record("id", id, "dept", id % departments, "name", "n" + id);
+  }
+
+  // Checks the rows come back in key order through a range on the key, and the departments through the
+  // index when there is one
+  private static void assertTable(DBApp app, String tableName, Map<Integer, Integer> expected)
+      throws DBAppException {
+    List<Integer> ids = new ArrayList<>();
+    Map<Integer, Integer> actual = new HashMap<>();
+    for (Hashtable<String, Object> record : TestSupport.select(app, tableName, "id", ">=", 0)) {
+      ids.add((Integer) record.get("id"));
+      actual.put((Integer) record.get("id"), (Integer) record.get("dept"));
+      assertEquals("n" + record.get("id"), record.get("name"));
+    }
+    assertEquals(expected, actual);
+    List<Integer> sorted = new ArrayList<>(ids);
+    Collections.sort(sorted);
+    assertEquals(sorted, ids);
+    for (int dept = 0; dept < departments; dept++) {
+      List<Hashtable<String, Object>> result = TestSupport.select(app, tableName, "dept", "=", dept);
+      for (Hashtable<String, Object> record : result) {
+        assertEquals(dept, expected.get(record.get("id")));
+      }
+      assertEquals(expected.values().stream().filter(Integer.valueOf(dept)::equals).count(), result.size());
+    }
+  }
+
+  private static int runFiles(String tableName) {
+    File[] runs = new File("data/" + tableName).listFiles((directory, name) -> name.startsWith("run"));
+    assertTrue(runs != null);
+    return runs.length;
+  }
+}
@@ -0,0 +1,10 @@
+import org.junit.jupiter.api.BeforeAll;
+
+// Snapshots of columnar pages
+class ColumnarSnapshotTest extends SnapshotTest {
+
+  @BeforeAll
+  static void useColumnarPages() {
+    MetaData.overrideProperty("PageLayout", "COLUMNAR");
+  }
+}
@@ -0,0 +1,11 @@
+import org.junit.jupiter.api.BeforeAll;
+
+// Snapshots of columnar pages holding both dictionary codes and the strings that didn't fit the dictionary
+class DictionaryOverflowSnapshotTest extends SnapshotTest {
+
+  @BeforeAll
+  static void useSmallDictionaries() {
+    MetaData.overrideProperty("PageLayout", "COLUMNAR");
+    MetaData.overrideProperty("DictionaryMaxSize", "300");
+  }
+}
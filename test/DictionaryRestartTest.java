@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Columns with more distinct strings than DictionaryMaxSize keep the rest in the pages, the codes and the
+// strings past them are read back after a restart, and from the log when they weren't checkpointed
+class DictionaryRestartTest {
+  private static final int dictionarySize = 40;
+  private static final int names = 120;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+    MetaData.overrideProperty("DictionaryMaxSize", String.valueOf(dictionarySize));
+  }
+
+  @Test
+  void stringsPastTheDictionaryAreReadAfterARestart() throws Exception {
+    for (String layout : new String[]{"ROW", "COLUMNAR"}) {
+      MetaData.overrideProperty("PageLayout", layout);
+      MetaData.reset();
+      String tableName = "Overflow" + layout;
+      DBApp app = new DBApp();
+      app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "name", "java.lang.String"));
+      app.createBitmapIndex(tableName, "name");
+      Map<Integer, String> expected = new HashMap<>();
+      for (int id = 0; id < 300; id++) {
+        insert(app, tableName, id, expected);
+      }
+      app.checkpoint();
+      // Changes with new strings that are only in the log
+      for (int id = 300; id < 400; id++) {
+        insert(app, tableName, id, expected);
+      }
+      for (int id = 0; id < 400; id += 5) {
+        app.updateTable(tableName, "id", TestSupport.record("id", id, "name", "u" + id));
+        expected.put(id, "u" + id);
+      }
+      for (int id = 1; id < 400; id += 9) {
+        app.deleteFromTable(tableName, TestSupport.record("id", id));
+        expected.remove(id);
+      }
+      MetaData.reset();
+
+      app = new DBApp();
+      assertTable(app, tableName, expected);
+      for (int id = 400; id < 450; id++) {
+        insert(app, tableName, id, expected);
+      }
+      app.checkpoint();
+      MetaData.reset();
+      assertTable(new DBApp(), tableName, expected);
+    }
+  }
+
+  private static void insert(DBApp app, String tableName, int id, Map<Integer, String> expected)
+      throws DBAppException {
+    String name = String.format("s%03d", id * 7 % names);
+    app.insertIntoTable(tableName, TestSupport.record("id", id, "name", name));
+    expected.put(id, name);
+  }
+
+  // Checks every row through the key, equal names through the index and ranges of names
+  private static void assertTable(DBApp app, String tableName, Map<Integer, String> expected)
+      throws DBAppException {
+    Map<Integer, String> actual = new HashMap<>();
+    for (Hashtable<String, Object> record : TestSupport.select(app, tableName, "id", ">=", 0)) {
+      actual.put((Integer) record.get("id"), (String) record.get("name"));
+    }
+    assertEquals(expected, actual);
+    for (String name : new HashSet<>(expected.values())) {
+      assertEquals(ids(expected, name::equals), ids(TestSupport.select(app, tableName, "name", "=", name)),
+          "Rows named " + name);
+    }
+    assertEquals(ids(expected, name -> name.compareTo("s060") < 0),
+        ids(TestSupport.select(app, tableName, "name", "<", "s060")));
+    assertEquals(ids(expected, name -> name.compareTo("s100") >= 0),
+        ids(TestSupport.select(app, tableName, "name", ">=", "s100")));
+  }
+
+  private static Set<Integer> ids(Map<Integer, String> rows, Predicate<String> condition) {
+    Set<Integer> ids = new HashSet<>();
+    rows.forEach((id, name) -> {
+      if (condition.test(name)) {
+        ids.add(id);
+      }
+    });
+    return ids;
+  }
+
+  private static Set<Integer> ids(Iterable<Hashtable<String, Object>> rows) {
+    Set<Integer> ids = new HashSet<>();
+    rows.forEach(record -> ids.add((Integer) record.get("id")));
+    return ids;
+  }
+}
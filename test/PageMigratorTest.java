@@ -0,0 +1,231 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Vector;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PageMigratorTest {
+  private static final int pageSize = 4;
+  private static final int departments = 7;
+
+  // Field layout of the serialized TablePage, written under its name
+  private static class LegacyPage implements Serializable {
+    private Vector<Hashtable<String, Comparable>> records;
+    private int maxSize;
+  }
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+    MetaData.overrideProperty("MaximumRowsCountinPage", String.valueOf(pageSize));
+  }
+
+  @Test
+  void fixtureFillsPagesLikeTheFirstVersion() {
+    List<List<Hashtable<String, Object>>> pages = legacyPages(Arrays.asList(5, 1, 9, 3, 7, 2, 8, 0, 6, 4, 11, 10));
+    List<List<Integer>> keys = new ArrayList<>();
+    for (List<Hashtable<String, Object>> page : pages) {
+      List<Integer> pageKeys = new ArrayList<>();
+      page.forEach(record -> pageKeys.add((Integer) record.get("id")));
+      keys.add(pageKeys);
+    }
+    assertEquals(Arrays.asList(Arrays.asList(9, 8, 7, 6), Arrays.asList(10, 5, 4, 3), Arrays.asList(11, 2, 1, 0)),
+        keys);
+  }
+
+  @Test
+  void migratedTableFindsEveryKey() throws Exception {
+    String tableName = "Legacy";
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 0; id < 400; id += 2) {
+      ids.add(id);
+    }
+    Collections.shuffle(ids, new Random(1));
+    writeLegacyTable(tableName, legacyPages(ids));
+    MetaData.reset();
+
+    PageMigrator.migrateTable(tableName);
+    MetaData.reset();
+
+    DBApp app = new DBApp();
+    for (int id : ids) {
+      List<Hashtable<String, Object>> result = TestSupport.select(app, tableName, "id", "=", id);
+      assertEquals(1, result.size(), "Rows with id " + id);
+      assertEquals(id % departments, result.get(0).get("dept"));
+      assertEquals("n" + id, result.get(0).get("name"));
+    }
+    for (int dept = 0; dept < departments; dept++) {
+      Set<Integer> expected = new HashSet<>();
+      for (int id : ids) {
+        if (id % departments == dept) {
+          expected.add(id);
+        }
+      }
+      assertEquals(expected, ids(TestSupport.select(app, tableName, "dept", "=", dept)));
+    }
+
+    // A key between two pages goes where a key lookup finds it
+    app.insertIntoTable(tableName, TestSupport.record("id", 201, "dept", 201 % departments, "name", "n201"));
+    assertEquals(1, TestSupport.select(app, tableName, "id", "=", 201).size());
+    assertEquals(ids.size() + 1, TestSupport.select(app, tableName, "id", ">=", 0).size());
+    Table table = MetaData.getTable(tableName);
+    int previous = Integer.MIN_VALUE;
+    for (int pageNum = 0; pageNum < table.getPages().size(); pageNum++) {
+      TablePage page = table.loadPage(pageNum);
+      for (int row = 0; row < page.size(); row++) {
+        int id = (Integer) page.get(row).toHashtable(table.getSchema()).get("id");
+        assertTrue(id >= previous, "Rows out of key order on page " + pageNum);
+        previous = id;
+      }
+    }
+  }
+
+  // Pages filled by the insert of the first version: rows in descending key order, and a full page pushes
+  // its smallest row into the next page
+  private static List<List<Hashtable<String, Object>>> legacyPages(List<Integer> ids) {
+    List<List<Hashtable<String, Object>>> pages = new ArrayList<>();
+    for (int id : ids) {
+      Hashtable<String, Object> record = TestSupport.record("id", id, "dept", id % departments, "name", "n" + id);
+      int pageNum = 0;
+      while (pageNum < pages.size() && (Integer) pages.get(pageNum).get(0).get("id") < id) {
+        pageNum++;
+      }
+      pageNum = Math.max(0, pageNum - 1);
+      for (; pageNum < pages.size() && record != null; pageNum++) {
+        record = insertDescending(pages.get(pageNum), record);
+      }
+      if (record != null) {
+        pages.add(new ArrayList<>(Collections.singletonList(record)));
+      }
+    }
+    return pages;
+  }
+
+  // Returns the row pushed out of the page, or null
+  private static Hashtable<String, Object> insertDescending(List<Hashtable<String, Object>> page,
+      Hashtable<String, Object> record) {
+    for (int i = 0; i < page.size(); i++) {
+      if ((Integer) record.get("id") >= (Integer) page.get(i).get("id")) {
+        page.add(i, record);
+        return page.size() > pageSize ? page.remove(page.size() - 1) : null;
+      }
+    }
+    if (page.size() < pageSize) {
+      page.add(record);
+      return null;
+    }
+    return record;
+  }
+
+  // Writes the pages as serialized TablePage objects with an index on dept addressing rows by position,
+  // and drops the fence keys that older tables didn't have
+  @SuppressWarnings("unchecked")
+  private static void writeLegacyTable(String tableName, List<List<Hashtable<String, Object>>> pages)
+      throws Exception {
+    DBApp app = new DBApp();
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "dept", "java.lang.Integer",
+        "name", "java.lang.String"));
+    app.createBitmapIndex(tableName, "dept");
+    Table table = MetaData.getTable(tableName);
+    Index index = ((Hashtable<String, Index>) field(table, "indices")).get("dept");
+    ArrayList<String> pageFiles = new ArrayList<>();
+    ArrayList<Integer> pageIds = new ArrayList<>();
+    Date touchDate = new Date();
+    for (int pageNum = 0; pageNum < pages.size(); pageNum++) {
+      LegacyPage legacyPage = new LegacyPage();
+      legacyPage.records = new Vector<>();
+      legacyPage.maxSize = pageSize;
+      Comparable[] departments = new Comparable[pages.get(pageNum).size()];
+      for (Hashtable<String, Object> record : pages.get(pageNum)) {
+        Hashtable<String, Comparable> legacyRecord = new Hashtable<>();
+        record.forEach((column, value) -> legacyRecord.put(column, (Comparable) value));
+        legacyRecord.put("TouchDate", touchDate);
+        departments[legacyPage.records.size()] = legacyRecord.get("dept");
+        legacyPage.records.add(legacyRecord);
+      }
+      File pageFile = new File("data/" + tableName + "/pages/" + pageNum);
+      Files.write(pageFile.toPath(), serializeAs(legacyPage, "TablePage"));
+      pageFiles.add(pageFile.getPath());
+      pageIds.add(pageNum);
+      index.insertPage(pageNum, departments);
+    }
+    setField(table, "pages", pageFiles);
+    setField(table, "pageIds", pageIds);
+    setField(table, "nextPageId", pages.size());
+    for (String keyDirectory : new String[]{"minKeys", "maxKeys", "zoneMaps"}) {
+      setField(table, keyDirectory, null);
+    }
+    table.checkpoint();
+  }
+
+  private static Object field(Object object, String name) throws ReflectiveOperationException {
+    Field field = object.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(object);
+  }
+
+  private static void setField(Object object, String name, Object value) throws ReflectiveOperationException {
+    Field field = object.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(object, value);
+  }
+
+  private static byte[] serializeAs(Object object, String className) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream writer = new ObjectOutputStream(bytes)) {
+      writer.writeObject(object);
+    }
+    // Replace the length prefixed class name in the class descriptor
+    byte[] serialized = bytes.toByteArray();
+    byte[] name = object.getClass().getName().getBytes(StandardCharsets.UTF_8);
+    byte[] newName = className.getBytes(StandardCharsets.UTF_8);
+    int position = indexOf(serialized, name) - 2;
+    ByteArrayOutputStream renamed = new ByteArrayOutputStream();
+    renamed.write(serialized, 0, position);
+    renamed.write(newName.length >> 8);
+    renamed.write(newName.length);
+    renamed.write(newName);
+    renamed.write(serialized, position + 2 + name.length, serialized.length - position - 2 - name.length);
+    return renamed.toByteArray();
+  }
+
+  private static int indexOf(byte[] bytes, byte[] part) {
+    for (int i = 0; i + part.length <= bytes.length; i++) {
+      int matched = 0;
+      while (matched < part.length && bytes[i + matched] == part[matched]) {
+        matched++;
+      }
+      if (matched == part.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static Set<Integer> ids(List<Hashtable<String, Object>> result) {
+    Set<Integer> ids = new HashSet<>();
+    for (Hashtable<String, Object> record : result) {
+      ids.add((Integer) record.get("id"));
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Inserts into full pages split them, down to pages that hold a single row
+class PageSplitTest {
+  private static int tableCount;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+  }
+
+  @Test
+  void insertsSplitFullPagesAtTheFrontMiddleAndEnd() throws Exception {
+    for (int pageSize : new int[]{1, 2, 5}) {
+      usePageSize(pageSize);
+      int middle = 10 * ((pageSize + 1) / 2) + 5;
+      for (int newKey : new int[]{5, middle, 10 * pageSize + 5}) {
+        DBApp app = new DBApp();
+        String tableName = createTable(app);
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Fills the first page
+        for (int id = 10; id <= 10 * pageSize; id += 10) {
+          insert(app, tableName, id, expected);
+        }
+        assertEquals(1, MetaData.getTable(tableName).getPages().size());
+
+        insert(app, tableName, newKey, expected);
+        assertEquals(2, MetaData.getTable(tableName).getPages().size());
+        assertTable(app, tableName, expected, pageSize);
+      }
+    }
+  }
+
+  @Test
+  void singleRowPagesKeepInsertsDeletesAndSelects() throws Exception {
+    usePageSize(1);
+    DBApp app = new DBApp();
+    String tableName = createTable(app);
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 0; id < 200; id++) {
+      ids.add(id);
+    }
+    Collections.shuffle(ids, new Random(7));
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int id : ids) {
+      insert(app, tableName, id, expected);
+    }
+    for (int id = 0; id < 200; id += 3) {
+      app.deleteFromTable(tableName, TestSupport.record("id", id));
+      expected.remove(id);
+    }
+    for (int id = 0; id < 200; id += 3) {
+      insert(app, tableName, id, expected);
+    }
+    assertTable(app, tableName, expected, 1);
+  }
+
+  // Pages take their size when they are created, the metadata is read again with the new size
+  private static void usePageSize(int pageSize) throws DBAppException {
+    MetaData.checkpoint();
+    MetaData.overrideProperty("MaximumRowsCountinPage", String.valueOf(pageSize));
+    MetaData.reset();
+  }
+
+  private static String createTable(DBApp app) throws DBAppException {
+    String tableName = "Split" + tableCount++;
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "name", "java.lang.String"));
+    return tableName;
+  }
+
+  private static void insert(DBApp app, String tableName, int id, TreeSet<Integer> expected)
+      throws DBAppException {
+    app.insertIntoTable(tableName, TestSupport.record("id", id, "name", "n" + id));
+    expected.add(id);
+  }
+
+  // Every key is found, and the pages are neither empty nor over full and hold the rows in key order
+  private static void assertTable(DBApp app, String tableName, TreeSet<Integer> expected, int pageSize)
+      throws DBAppException {
+    for (int id : expected) {
+      List<Hashtable<String, Object>> result = TestSupport.select(app, tableName, "id", "=", id);
+      assertEquals(1, result.size(), "Rows with id " + id);
+      assertEquals("n" + id, result.get(0).get("name"));
+    }
+    Table table = MetaData.getTable(tableName);
+    List<Integer> keys = new ArrayList<>();
+    for (int pageNum = 0; pageNum < table.getPages().size(); pageNum++) {
+      TablePage page = table.loadPage(pageNum);
+      assertTrue(page.size() > 0 && page.size() <= pageSize, "Page " + pageNum + " holds " + page.size());
+      for (int row = 0; row < page.size(); row++) {
+        keys.add((Integer) page.get(row).toHashtable(table.getSchema()).get("id"));
+      }
+    }
+    assertEquals(new ArrayList<>(expected), keys);
+  }
+}
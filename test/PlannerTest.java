@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// The planner probes an index only when it leaves fewer pages to load than the scan, and evaluates the
+// most selective terms of an AND first
+class PlannerTest {
+  private static final int rows = 2000;
+  private static final int codes = 1000;
+  private static DBApp app;
+
+  @BeforeAll
+  static void setUp() throws DBAppException {
+    TestSupport.deleteData();
+    app = new DBApp();
+  }
+
+  @Test
+  void indexedTermsUseTheIndexWithoutStatistics() throws Exception {
+    String tableName = createTable("Unanalyzed");
+    assertEquals("bitmap index", accessPath(explain(tableName, "code", "=", 5)));
+    assertEquals("bitmap index", accessPath(explain(tableName, "half", "=", 1)));
+    // != matches nearly every row
+    assertEquals("page scan", accessPath(explain(tableName, "half", "!=", 1)));
+    assertEquals("key range", accessPath(explain(tableName, "id", "<", 300)));
+    assertEquals("page scan", accessPath(explain(tableName, "plain", "=", 3)));
+    assertEquals(-1, explain(tableName, "code", "=", 5).getEstimatedRows());
+  }
+
+  @Test
+  void statisticsChooseBetweenIndexAndScan() throws Exception {
+    String tableName = createTable("Analyzed");
+    app.analyzeTable(tableName);
+    int tablePages = MetaData.getTable(tableName).getPages().size();
+
+    // Two rows match, they are on at most two pages
+    QueryPlan selective = app.explainAnalyze(terms(tableName, "code", "=", 5), new String[0]);
+    assertEquals("bitmap index", accessPath(selective));
+    assertEquals(2, selective.getEstimatedRows());
+    assertEquals(2, selective.getCandidateRows());
+    assertEquals(2, selective.getRowsReturned());
+    assertTrue(selective.getPagesScanned() <= 2);
+
+    // Half of the rows match, they are on every page
+    QueryPlan unselective = app.explainAnalyze(terms(tableName, "half", "=", 1), new String[0]);
+    assertEquals("page scan", accessPath(unselective));
+    assertEquals(rows / 2, unselective.getRowsReturned());
+    assertEquals(tablePages, unselective.getPagesScanned());
+
+    // The more selective term goes first whatever the order it was given in
+    SQLTerm[] and = {TestSupport.term(tableName, "half", "=", 1), TestSupport.term(tableName, "code", "=", 5)};
+    QueryPlan plan = app.explain(and, new String[]{"AND"});
+    assertEquals("code = 5 AND half = 1", plan.getCondition());
+    assertEquals("bitmap index", plan.getTerms().get(0).getAccessPath());
+    assertEquals("page scan", plan.getTerms().get(1).getAccessPath());
+    assertEquals(2, TestSupport.toList(app.selectFromTable(and, new String[]{"AND"})).size());
+  }
+
+  // Codes match two rows each, the halves every other row
+  private static String createTable(String tableName) throws DBAppException {
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "code", "java.lang.Integer",
+        "half", "java.lang.Integer", "plain", "java.lang.Integer"));
+    List<Hashtable<String, Object>> records = new ArrayList<>();
+    for (int id = 0; id < rows; id++) {
+      records.add(TestSupport.record("id", id, "code", id % codes, "half", id % 2, "plain", id % 10));
+    }
+    app.bulkInsert(tableName, records.iterator());
+    app.createBitmapIndex(tableName, "code");
+    app.createBitmapIndex(tableName, "half");
+    return tableName;
+  }
+
+  private static SQLTerm[] terms(String tableName, String column, String operator, Object value) {
+    return new SQLTerm[]{TestSupport.term(tableName, column, operator, value)};
+  }
+
+  private static QueryPlan explain(String tableName, String column, String operator, Object value)
+      throws DBAppException {
+    return app.explain(terms(tableName, column, operator, value), new String[0]);
+  }
+
+  private static String accessPath(QueryPlan plan) {
+    assertEquals(1, plan.getTerms().size());
+    return plan.getTerms().get(0).getAccessPath();
+  }
+}
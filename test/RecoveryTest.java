@@ -0,0 +1,239 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RecoveryTest {
+  private static final int departments = 5;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+  }
+
+  @Test
+  void changesAfterTheLastCheckpointAreRedone() throws Exception {
+    String tableName = "Redo";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int id = 0; id < 300; id++) {
+      insert(app, tableName, id, expected);
+    }
+    app.createBitmapIndex(tableName, "dept");
+    app.checkpoint();
+    // Inserts, updates and deletes that are only in the log
+    for (int id = 300; id < 500; id++) {
+      insert(app, tableName, id, expected);
+    }
+    for (int id = 0; id < 500; id += 3) {
+      app.updateTable(tableName, "id", TestSupport.record("id", id, "dept", (id + 1) % departments));
+      expected.put(id, (id + 1) % departments);
+    }
+    for (int id = 0; id < 500; id += 7) {
+      app.deleteFromTable(tableName, TestSupport.record("id", id));
+      expected.remove(id);
+    }
+    assertTrue(Files.size(logFile(tableName)) > 0);
+    MetaData.reset();
+
+    assertTable(new DBApp(), tableName, expected);
+  }
+
+  @Test
+  void tornLastRecordIsDropped() throws Exception {
+    String tableName = "Torn";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int id = 0; id < 100; id++) {
+      insert(app, tableName, id, expected);
+    }
+    Path log = logFile(tableName);
+    long lastRecord = Files.size(log);
+    app.insertIntoTable(tableName, TestSupport.record("id", 100, "dept", 0, "name", "n100"));
+    MetaData.reset();
+    // The crash left only part of the last record
+    try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+      file.setLength(lastRecord + (file.length() - lastRecord) / 2);
+    }
+
+    app = new DBApp();
+    assertTable(app, tableName, expected);
+    // New records go where the torn record was
+    insert(app, tableName, 101, expected);
+    MetaData.reset();
+    assertTable(new DBApp(), tableName, expected);
+  }
+
+  @Test
+  void lastRecordWithBadChecksumIsDropped() throws Exception {
+    String tableName = "Corrupt";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int id = 0; id < 100; id++) {
+      insert(app, tableName, id, expected);
+    }
+    Path log = logFile(tableName);
+    long lastRecord = Files.size(log);
+    app.insertIntoTable(tableName, TestSupport.record("id", 100, "dept", 0, "name", "n100"));
+    MetaData.reset();
+    // Flip a byte of the row, past the length and the checksum
+    flipByte(log, Files.size(log) - 1);
+
+    app = new DBApp();
+    assertTable(app, tableName, expected);
+    insert(app, tableName, 101, expected);
+    MetaData.reset();
+    assertTable(new DBApp(), tableName, expected);
+  }
+
+  @Test
+  void longStringsAreLoggedAndRedone() throws Exception {
+    String tableName = "LongString";
+    DBApp app = createTable(tableName);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      builder.append(i % 100 == 0 ? '\u00e9' : (char) ('a' + i % 26));
+    }
+    String name = builder.toString();
+    app.insertIntoTable(tableName, TestSupport.record("id", 1, "dept", 1, "name", name));
+    app.updateTable(tableName, "id", TestSupport.record("id", 1, "name", name + "!"));
+    MetaData.reset();
+
+    List<Hashtable<String, Object>> result = TestSupport.select(new DBApp(), tableName, "id", "=", 1);
+    assertEquals(1, result.size());
+    assertEquals(name + "!", result.get(0).get("name"));
+  }
+
+  @Test
+  void recoveryKeepsTheLogWhenTheBufferPoolOverflows() throws Exception {
+    String tableName = "SmallPool";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    List<Hashtable<String, Object>> records = new ArrayList<>();
+    for (int id = 0; id < 10 * MetaData.getTablePageSize(); id++) {
+      records.add(TestSupport.record("id", id, "dept", id % departments, "name", "n" + id));
+      expected.put(id, id % departments);
+    }
+    app.bulkInsert(tableName, records.iterator());
+    app.checkpoint();
+    List<String> pages = MetaData.getTable(tableName).getPages();
+    // Changes rows on every page, the last page is changed last
+    for (int pageNum = 0; pageNum < pages.size(); pageNum++) {
+      int id = pageNum * MetaData.getTablePageSize() + 1;
+      app.updateTable(tableName, "id", TestSupport.record("id", id, "dept", (id + 1) % departments));
+      expected.put(id, (id + 1) % departments);
+      app.deleteFromTable(tableName, TestSupport.record("id", id + 1));
+      expected.remove(id + 1);
+    }
+    Path lastPage = Paths.get(pages.get(pages.size() - 1));
+    MetaData.reset();
+
+    String poolSize = String.valueOf(MetaData.getBufferPoolSize());
+    MetaData.overrideProperty("BufferPoolSize", "2");
+    try {
+      // The recovery crashes at the last page, after the other pages overflowed the buffer pool
+      byte[] lastPageImage = Files.readAllBytes(lastPage);
+      Files.write(lastPage, new byte[0]);
+      MetaData.reset();
+      assertThrows(Exception.class, () -> MetaData.getTable(tableName));
+
+      // The failed recovery is not cached, the next use of the table recovers it again from the whole log
+      Files.write(lastPage, lastPageImage);
+      assertTable(new DBApp(), tableName, expected);
+    } finally {
+      MetaData.overrideProperty("BufferPoolSize", poolSize);
+      MetaData.reset();
+    }
+  }
+
+  @Test
+  void changeCheckpointedHalfwayIsRedone() throws Exception {
+    String tableName = "Halfway";
+    DBApp app = createTable(tableName);
+    Map<Integer, Integer> expected = new HashMap<>();
+    List<Hashtable<String, Object>> records = new ArrayList<>();
+    for (int id = 0; id < 10 * MetaData.getTablePageSize(); id++) {
+      records.add(TestSupport.record("id", id, "dept", id % departments, "name", "n" + id));
+      expected.put(id, id % departments);
+    }
+    app.bulkInsert(tableName, records.iterator());
+    app.checkpoint();
+    MetaData.reset();
+
+    String poolSize = String.valueOf(MetaData.getBufferPoolSize());
+    MetaData.overrideProperty("BufferPoolSize", "2");
+    try {
+      MetaData.reset();
+      // Every page holds rows of the department, the pool overflows before the delete reaches the last ones.
+      // The crash comes before the commit, which would checkpoint the rest
+      MetaData.getTable(tableName).delete(TestSupport.record("dept", 2), 1);
+      expected.values().removeIf(dept -> dept == 2);
+      MetaData.reset();
+      assertTable(new DBApp(), tableName, expected);
+    } finally {
+      MetaData.overrideProperty("BufferPoolSize", poolSize);
+      MetaData.reset();
+    }
+  }
+
+  private static DBApp createTable(String tableName) throws DBAppException {
+    DBApp app = new DBApp();
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "dept", "java.lang.Integer",
+        "name", "java.lang.String"));
+    return app;
+  }
+
+  private static void insert(DBApp app, String tableName, int id, Map<Integer, Integer> expected)
+      throws DBAppException {
+    app.insertIntoTable(tableName, TestSupport.record("id", id, "dept", id % departments, "name", "n" + id));
+    expected.put(id, id % departments);
+  }
+
+  // Checks the rows through a range on the key and the departments through the index when there is one
+  private static void assertTable(DBApp app, String tableName, Map<Integer, Integer> expected)
+      throws DBAppException {
+    Map<Integer, Integer> actual = new HashMap<>();
+    for (Hashtable<String, Object> record : TestSupport.select(app, tableName, "id", ">=", 0)) {
+      actual.put((Integer) record.get("id"), (Integer) record.get("dept"));
+      assertEquals("n" + record.get("id"), record.get("name"));
+    }
+    assertEquals(expected, actual);
+    for (int department = 0; department < departments; department++) {
+      int dept = department;
+      List<Hashtable<String, Object>> result = TestSupport.select(app, tableName, "dept", "=", dept);
+      Map<Integer, Integer> inDepartment = new HashMap<>();
+      for (Hashtable<String, Object> record : result) {
+        inDepartment.put((Integer) record.get("id"), (Integer) record.get("dept"));
+      }
+      Map<Integer, Integer> expectedInDepartment = new HashMap<>(expected);
+      expectedInDepartment.values().removeIf(value -> value != dept);
+      assertEquals(expectedInDepartment, inDepartment);
+    }
+  }
+
+  private static Path logFile(String tableName) {
+    return Paths.get("data", tableName, tableName + ".wal");
+  }
+
+  private static void flipByte(Path file, long position) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(position);
+      int value = raf.read();
+      raf.seek(position);
+      raf.write(value ^ 0xff);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Selects read the version of the table they started on while other threads change it. Runs with the
+// layout and dictionary size of the config, the subclasses run it with other page encodings
+class SnapshotTest {
+  private static final int rows = 1000;
+  private static final int departments = 4;
+  private static int tableCount;
+
+  @BeforeAll
+  static void setUp() {
+    TestSupport.deleteData();
+  }
+
+  @Test
+  void selectSeesTheRowsOfItsStartWhileRowsChange() throws Exception {
+    for (int parallelism : new int[]{1, 4}) {
+      DBApp app = new DBApp();
+      String tableName = createTable(app);
+      Map<Integer, String> before = names(app, tableName, "id", ">=", 0, 1);
+      Iterator keyRange = app.selectFromTable(terms(tableName, "id", ">=", 0), new String[0], parallelism);
+      Iterator indexed = app.selectFromTable(terms(tableName, "dept", "=", 1), new String[0], parallelism);
+      Map<Integer, String> seen = new HashMap<>();
+      Map<Integer, String> seenIndexed = new HashMap<>();
+      read(keyRange, 50, seen);
+      read(indexed, 50, seenIndexed);
+
+      runInOtherThread(() -> {
+        for (int id = 0; id < rows; id += 3) {
+          app.deleteFromTable(tableName, TestSupport.record("id", id));
+        }
+        for (int id = 1; id < rows; id += 3) {
+          app.updateTable(tableName, "id", TestSupport.record("id", id, "dept", 1, "name", "changed" + id));
+        }
+        for (int id = rows; id < rows + 300; id++) {
+          app.insertIntoTable(tableName, TestSupport.record("id", id, "dept", 1, "name", "new" + id));
+        }
+      });
+
+      read(keyRange, Integer.MAX_VALUE, seen);
+      read(indexed, Integer.MAX_VALUE, seenIndexed);
+      assertEquals(before, seen);
+      assertEquals(inDepartment(before, 1), seenIndexed);
+      // Selects started afterwards see the changes
+      Map<Integer, String> after = names(app, tableName, "id", ">=", 0, parallelism);
+      assertEquals(rows + 300 - (rows + 2) / 3, after.size());
+      assertEquals("changed1", after.get(1));
+    }
+  }
+
+  @Test
+  void selectSeesTheOldPagesWhileABulkLoadReplacesThem() throws Exception {
+    DBApp app = new DBApp();
+    String tableName = createTable(app);
+    Map<Integer, String> before = names(app, tableName, "id", ">=", 0, 1);
+    Iterator indexed = app.selectFromTable(terms(tableName, "dept", "=", 2), new String[0]);
+    Map<Integer, String> seen = new HashMap<>();
+    read(indexed, 20, seen);
+
+    runInOtherThread(() -> {
+      List<Hashtable<String, Object>> loaded = new ArrayList<>();
+      for (int id = -500; id < 0; id++) {
+        loaded.add(TestSupport.record("id", id, "dept", 2, "name", "loaded" + id));
+      }
+      app.bulkInsert(tableName, loaded.iterator());
+    });
+
+    read(indexed, Integer.MAX_VALUE, seen);
+    assertEquals(inDepartment(before, 2), seen);
+    assertEquals(rows + 500, TestSupport.select(app, tableName, "id", ">=", -500).size());
+  }
+
+  private interface Change {
+    void run() throws DBAppException;
+  }
+
+  private static void runInOtherThread(Change change) throws Exception {
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Thread thread = new Thread(() -> {
+      try {
+        change.run();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    thread.start();
+    thread.join(60000);
+    assertFalse(thread.isAlive(), "The change waited for the open select");
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private static String createTable(DBApp app) throws DBAppException {
+    String tableName = "Snapshot" + tableCount++;
+    app.createTable(tableName, "id", TestSupport.columns("id", "java.lang.Integer", "dept", "java.lang.Integer",
+        "name", "java.lang.String"));
+    List<Hashtable<String, Object>> records = new ArrayList<>();
+    for (int id = 0; id < rows; id++) {
+      records.add(TestSupport.record("id", id, "dept", id % departments, "name", "name" + id));
+    }
+    app.bulkInsert(tableName, records.iterator());
+    app.createBitmapIndex(tableName, "dept");
+    return tableName;
+  }
+
+  private static SQLTerm[] terms(String tableName, String column, String operator, Object value) {
+    return new SQLTerm[]{TestSupport.term(tableName, column, operator, value)};
+  }
+
+  private static Map<Integer, String> names(DBApp app, String tableName, String column, String operator,
+      Object value, int parallelism) throws DBAppException {
+    Map<Integer, String> names = new HashMap<>();
+    read(app.selectFromTable(terms(tableName, column, operator, value), new String[0], parallelism),
+        Integer.MAX_VALUE, names);
+    return names;
+  }
+
+  private static void read(Iterator result, int count, Map<Integer, String> names) {
+    for (int i = 0; i < count && result.hasNext(); i++) {
+      Hashtable<?, ?> record = (Hashtable<?, ?>) result.next();
+      names.put((Integer) record.get("id"), (String) record.get("name"));
+    }
+  }
+
+  private static Map<Integer, String> inDepartment(Map<Integer, String> names, int dept) {
+    Map<Integer, String> inDepartment = new HashMap<>(names);
+    inDepartment.keySet().removeIf(id -> id % departments != dept);
+    return inDepartment;
+  }
+}
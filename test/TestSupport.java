@@ -0,0 +1,62 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+
+// Helpers shared by the tests, which run in a scratch directory holding a copy of config/
+class TestSupport {
+
+  static void deleteData() {
+    deleteDirectory(new File("data"));
+  }
+
+  static Hashtable<String, String> columns(String... namesAndTypes) {
+    Hashtable<String, String> columns = new Hashtable<>();
+    for (int i = 0; i < namesAndTypes.length; i += 2) {
+      columns.put(namesAndTypes[i], namesAndTypes[i + 1]);
+    }
+    return columns;
+  }
+
+  static Hashtable<String, Object> record(Object... namesAndValues) {
+    Hashtable<String, Object> record = new Hashtable<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      record.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return record;
+  }
+
+  static SQLTerm term(String tableName, String column, String operator, Object value) {
+    SQLTerm term = new SQLTerm();
+    term._strTableName = tableName;
+    term._strColumnName = column;
+    term._strOperator = operator;
+    term._objValue = value;
+    return term;
+  }
+
+  static List<Hashtable<String, Object>> select(DBApp app, String tableName, String column, String operator,
+      Object value) throws DBAppException {
+    return toList(app.selectFromTable(new SQLTerm[]{term(tableName, column, operator, value)}, new String[0]));
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<Hashtable<String, Object>> toList(Iterator result) {
+    List<Hashtable<String, Object>> rows = new ArrayList<>();
+    while (result.hasNext()) {
+      rows.add((Hashtable<String, Object>) result.next());
+    }
+    return rows;
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    directory.delete();
+  }
+}